@@ -0,0 +1,110 @@
+package com.zz4955.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.zz4955.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * 单线程下AbstractFuture的set/setException/setFuture、addListener和已完成时get()的开销。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AbstractFutureBenchmark {
+
+    static final Integer VALUE = 42;
+    static final Runnable NO_OP = new Runnable() {
+        @Override
+        public void run() {}
+    };
+
+    private final Exception failure = new Exception("benchmark failure");
+    private BenchmarkFuture<Integer> done;
+    private BenchmarkFuture<Integer> failed;
+
+    @Setup
+    public void setUp() {
+        done = new BenchmarkFuture<>();
+        done.set(VALUE);
+        failed = new BenchmarkFuture<>();
+        failed.setException(failure);
+    }
+
+    @Benchmark
+    public BenchmarkFuture<Integer> set() {
+        BenchmarkFuture<Integer> future = new BenchmarkFuture<>();
+        future.set(VALUE);
+        return future;
+    }
+
+    @Benchmark
+    public BenchmarkFuture<Integer> setException() {
+        BenchmarkFuture<Integer> future = new BenchmarkFuture<>();
+        future.setException(failure);
+        return future;
+    }
+
+    @Benchmark
+    public BenchmarkFuture<Integer> setFutureDone() {
+        BenchmarkFuture<Integer> future = new BenchmarkFuture<>();
+        future.setFuture(done);
+        return future;
+    }
+
+    @Benchmark
+    public BenchmarkFuture<Integer> setFuturePending() {
+        BenchmarkFuture<Integer> input = new BenchmarkFuture<>();
+        BenchmarkFuture<Integer> future = new BenchmarkFuture<>();
+        future.setFuture(input);
+        input.set(VALUE);
+        return future;
+    }
+
+    @Benchmark
+    public BenchmarkFuture<Integer> addListenerBeforeDone() {
+        BenchmarkFuture<Integer> future = new BenchmarkFuture<>();
+        future.addListener(NO_OP, directExecutor());
+        future.set(VALUE);
+        return future;
+    }
+
+    @Benchmark
+    public void addListenerAfterDone() {
+        done.addListener(NO_OP, directExecutor());
+    }
+
+    @Benchmark
+    public Integer getDone() throws InterruptedException, ExecutionException {
+        return done.get();
+    }
+
+    @Benchmark
+    public Integer getDoneTimed() throws InterruptedException, ExecutionException, TimeoutException {
+        return done.get(1, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public Object getFailed() throws InterruptedException {
+        try {
+            return failed.get();
+        } catch (ExecutionException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.zz4955.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.zz4955.benchmark.AbstractFutureBenchmark.NO_OP;
+import static com.zz4955.benchmark.AbstractFutureBenchmark.VALUE;
+import static com.zz4955.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * complete()在长listener链和长setFuture链上的开销。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AbstractFutureCompleteBenchmark {
+
+    @Param({"1", "16", "256"})
+    int length;
+
+    private ExecutorService pool;
+
+    @Setup
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(2);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    public BenchmarkFuture<Integer> completeListeners() {
+        BenchmarkFuture<Integer> future = new BenchmarkFuture<>();
+        for(int i = 0; i < length; i ++) {
+            future.addListener(NO_OP, directExecutor());
+        }
+        future.set(VALUE);
+        return future;
+    }
+
+    // 所有listener都用同一个线程池，complete()会把它们合成几批提交
+    @Benchmark
+    public BenchmarkFuture<Integer> completeListenersOnPool() throws InterruptedException {
+        BenchmarkFuture<Integer> future = new BenchmarkFuture<>();
+        final CountDownLatch latch = new CountDownLatch(length);
+        Runnable countDown = new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+        for(int i = 0; i < length; i ++) {
+            future.addListener(countDown, pool);
+        }
+        future.set(VALUE);
+        latch.await();
+        return future;
+    }
+
+    @Benchmark
+    public BenchmarkFuture<Integer> completeSetFutureChain() {
+        BenchmarkFuture<Integer> head = new BenchmarkFuture<>();
+        BenchmarkFuture<Integer> tail = head;
+        for(int i = 0; i < length; i ++) {
+            BenchmarkFuture<Integer> next = new BenchmarkFuture<>();
+            next.setFuture(tail);
+            tail = next;
+        }
+        head.set(VALUE);
+        return tail;
+    }
+}
@@ -0,0 +1,114 @@
+package com.zz4955.benchmark;
+
+import com.zz4955.concurrent.WaitStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.zz4955.benchmark.AbstractFutureBenchmark.VALUE;
+
+/**
+ * 由另一个线程完成future时get()的开销：
+ * getTimedSpin的超时时间小于AbstractFuture的自旋阈值，只走自旋；getTimedPark和getUntimed走park/unpark。
+ * waitStrategy决定挂起之前怎么等。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AbstractFutureGetBenchmark {
+
+    private static final long SPIN_TIMEOUT_NANOS = 500L;
+
+    @Param({"park", "adaptive", "busy_spin"})
+    String waitStrategy;
+
+    private WaitStrategy strategy;
+    private Completer completer;
+
+    @Setup(Level.Trial)
+    public void startCompleter() {
+        strategy = "adaptive".equals(waitStrategy) ? WaitStrategy.adaptive()
+                : "busy_spin".equals(waitStrategy) ? WaitStrategy.busySpin()
+                : WaitStrategy.park();
+        completer = new Completer();
+        completer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopCompleter() throws InterruptedException {
+        completer.stop();
+    }
+
+    @Benchmark
+    public Integer getUntimed() throws InterruptedException, ExecutionException {
+        BenchmarkFuture<Integer> future = new BenchmarkFuture<>(strategy);
+        completer.complete(future);
+        return future.get();
+    }
+
+    @Benchmark
+    public Object getTimedSpin() throws InterruptedException, ExecutionException {
+        BenchmarkFuture<Integer> future = new BenchmarkFuture<>(strategy);
+        completer.complete(future);
+        try {
+            return future.get(SPIN_TIMEOUT_NANOS, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Integer getTimedPark() throws InterruptedException, ExecutionException, TimeoutException {
+        BenchmarkFuture<Integer> future = new BenchmarkFuture<>(strategy);
+        completer.complete(future);
+        return future.get(1, TimeUnit.SECONDS);
+    }
+
+    private static final class Completer implements Runnable {
+        private final AtomicReference<BenchmarkFuture<Integer>> pending = new AtomicReference<>();
+        private final Thread thread = new Thread(this, "benchmark-completer");
+        private volatile boolean running = true;
+
+        void start() {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws InterruptedException {
+            running = false;
+            thread.join();
+        }
+
+        void complete(BenchmarkFuture<Integer> future) {
+            pending.set(future);
+        }
+
+        @Override
+        public void run() {
+            while(running) {
+                BenchmarkFuture<Integer> future = pending.get();
+                if(future != null && pending.compareAndSet(future, null)) {
+                    future.set(VALUE);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.zz4955.benchmark;
+
+import com.zz4955.concurrent.AbstractFuture;
+import com.zz4955.concurrent.ListenableFuture;
+import com.zz4955.concurrent.WaitStrategy;
+
+public final class BenchmarkFuture<V> extends AbstractFuture<V> {
+
+    private final WaitStrategy waitStrategy;
+
+    public BenchmarkFuture() {
+        this(null);
+    }
+
+    public BenchmarkFuture(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    @Override
+    protected WaitStrategy waitStrategy() {
+        return waitStrategy != null ? waitStrategy : super.waitStrategy();
+    }
+
+    @Override
+    public boolean set(V value) {
+        return super.set(value);
+    }
+
+    @Override
+    public boolean setException(Throwable throwable) {
+        return super.setException(throwable);
+    }
+
+    @Override
+    public boolean setFuture(ListenableFuture<? extends V> future) {
+        return super.setFuture(future);
+    }
+}
@@ -0,0 +1,65 @@
+package com.zz4955.benchmark;
+
+import com.zz4955.concurrent.FluentFuture;
+import com.zz4955.concurrent.Futures;
+import com.zz4955.concurrent.ListenableFuture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.zz4955.benchmark.AbstractFutureBenchmark.VALUE;
+import static com.zz4955.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * directExecutor上的transform链：FluentFuture会合并同步的各级，Futures.transform每一级一个listener。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FluentFutureBenchmark {
+
+    private static final Function<Integer, Integer> IDENTITY = new Function<Integer, Integer>() {
+        @Override
+        public Integer apply(Integer input) {
+            return input;
+        }
+    };
+
+    @Param({"1", "4", "16"})
+    int length;
+
+    @Benchmark
+    public ListenableFuture<Integer> fluentTransformChain() {
+        BenchmarkFuture<Integer> input = new BenchmarkFuture<>();
+        FluentFuture<Integer> output = input;
+        for(int i = 0; i < length; i ++) {
+            output = output.transform(IDENTITY, directExecutor());
+        }
+        input.set(VALUE);
+        return output;
+    }
+
+    @Benchmark
+    public ListenableFuture<Integer> futuresTransformChain() {
+        BenchmarkFuture<Integer> input = new BenchmarkFuture<>();
+        ListenableFuture<Integer> output = input;
+        for(int i = 0; i < length; i ++) {
+            output = Futures.transform(output, IDENTITY, directExecutor());
+        }
+        input.set(VALUE);
+        return output;
+    }
+}
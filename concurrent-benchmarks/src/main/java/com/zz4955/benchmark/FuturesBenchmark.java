@@ -0,0 +1,96 @@
+package com.zz4955.benchmark;
+
+import com.zz4955.concurrent.Futures;
+import com.zz4955.concurrent.ListenableFuture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.zz4955.benchmark.AbstractFutureBenchmark.VALUE;
+import static com.zz4955.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * Futures上的组合操作，分别在输入已完成（缓存命中）和未完成两种情况下的开销。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FuturesBenchmark {
+
+    private static final Function<Integer, Integer> INCREMENT = new Function<Integer, Integer>() {
+        @Override
+        public Integer apply(Integer input) {
+            return input + 1;
+        }
+    };
+
+    private static final Function<IOException, Integer> FALLBACK = new Function<IOException, Integer>() {
+        @Override
+        public Integer apply(IOException input) {
+            return VALUE;
+        }
+    };
+
+    private ListenableFuture<Integer> done;
+    private ListenableFuture<Integer> failed;
+
+    @Setup
+    public void setUp() {
+        done = Futures.immediateFuture(VALUE);
+        failed = Futures.immediateFailedFuture(new IOException("benchmark failure"));
+    }
+
+    @Benchmark
+    public ListenableFuture<Integer> transformDone() {
+        return Futures.transform(done, INCREMENT, directExecutor());
+    }
+
+    @Benchmark
+    public ListenableFuture<Integer> transformPending() {
+        BenchmarkFuture<Integer> input = new BenchmarkFuture<>();
+        ListenableFuture<Integer> output = Futures.transform(input, INCREMENT, directExecutor());
+        input.set(VALUE);
+        return output;
+    }
+
+    @Benchmark
+    public ListenableFuture<Integer> catchingDone() {
+        return Futures.catching(failed, IOException.class, FALLBACK, directExecutor());
+    }
+
+    @Benchmark
+    public ListenableFuture<List<Integer>> allAsListDone() {
+        return Futures.allAsList(done, done, done, done);
+    }
+
+    @Benchmark
+    public ListenableFuture<List<Integer>> allAsListPending() {
+        BenchmarkFuture<Integer> input = new BenchmarkFuture<>();
+        ListenableFuture<List<Integer>> output = Futures.allAsList(done, done, done, input);
+        input.set(VALUE);
+        return output;
+    }
+
+    @Benchmark
+    public ListenableFuture<int[]> allAsIntArrayPending() {
+        BenchmarkFuture<Integer> input = new BenchmarkFuture<>();
+        ListenableFuture<int[]> output = Futures.allAsIntArray(done, done, done, input);
+        input.set(VALUE);
+        return output;
+    }
+}
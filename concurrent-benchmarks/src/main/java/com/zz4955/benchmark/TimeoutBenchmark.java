@@ -0,0 +1,65 @@
+package com.zz4955.benchmark;
+
+import com.zz4955.concurrent.Futures;
+import com.zz4955.concurrent.ListenableFuture;
+import com.zz4955.concurrent.TimerWheel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.zz4955.benchmark.AbstractFutureBenchmark.VALUE;
+
+/**
+ * withTimeout在超时之前就完成的常见情况：一次arm加一次disarm。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimeoutBenchmark {
+
+    private ScheduledExecutorService scheduledExecutor;
+    private TimerWheel timerWheel;
+
+    @Setup
+    public void setUp() {
+        scheduledExecutor = Executors.newScheduledThreadPool(1);
+        timerWheel = TimerWheel.create();
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduledExecutor.shutdownNow();
+        timerWheel.shutdown();
+    }
+
+    @Benchmark
+    public ListenableFuture<Integer> scheduledExecutor() {
+        BenchmarkFuture<Integer> input = new BenchmarkFuture<>();
+        ListenableFuture<Integer> output = Futures.withTimeout(input, 1, TimeUnit.SECONDS, scheduledExecutor);
+        input.set(VALUE);
+        return output;
+    }
+
+    @Benchmark
+    public ListenableFuture<Integer> timerWheel() {
+        BenchmarkFuture<Integer> input = new BenchmarkFuture<>();
+        ListenableFuture<Integer> output = Futures.withTimeout(input, 1, TimeUnit.SECONDS, timerWheel);
+        input.set(VALUE);
+        return output;
+    }
+}
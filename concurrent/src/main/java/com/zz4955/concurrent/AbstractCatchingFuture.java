@@ -5,6 +5,7 @@ import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 import static com.zz4955.concurrent.Futures.getDone;
+import static com.zz4955.concurrent.MoreExecutors.directExecutor;
 import static com.zz4955.concurrent.Tools.checkNotNull;
 import static com.zz4955.concurrent.Tools.isInstanceOfThrowableClass;
 import static com.zz4955.concurrent.Tools.rejectionPropagatingExecutor;
@@ -17,6 +18,9 @@ abstract class AbstractCatchingFuture<V, X extends Throwable, F, T>
             Class<X> exceptionType,
             Function<? super X, ? extends V> fallback,
             Executor executor) {
+        if(executor == directExecutor() && input.isDone()) {
+            return immediateCatching(input, checkNotNull(exceptionType), checkNotNull(fallback));
+        }
         CatchingFuture<V, X> future = new CatchingFuture<>(input, exceptionType, fallback);
         input.addListener(future, rejectionPropagatingExecutor(executor, future));
         return future;
@@ -32,6 +36,32 @@ abstract class AbstractCatchingFuture<V, X extends Throwable, F, T>
         return future;
     }
 
+    private static <V, X extends Throwable> ListenableFuture<V> immediateCatching(
+            ListenableFuture<? extends V> input,
+            Class<X> exceptionType,
+            Function<? super X, ? extends V> fallback) {
+        Throwable throwable;
+        try {
+            return Futures.<V>immediateFuture(getDone(input));
+        } catch (ExecutionException e) {
+            throwable = checkNotNull(e.getCause());
+        } catch (Throwable e) {
+            throwable = e;
+        }
+
+        if(!isInstanceOfThrowableClass(throwable, exceptionType)) {
+            return Futures.immediateFailedFuture(throwable);
+        }
+
+        @SuppressWarnings("unchecked")
+        X castThrowable = (X) throwable;
+        try {
+            return Futures.immediateFuture(fallback.apply(castThrowable));
+        } catch (Throwable t) {
+            return Futures.immediateFailedFuture(t);
+        }
+    }
+
     ListenableFuture<? extends V> inputFuture;
     Class<X> exceptionType;
     F fallback;
@@ -1,5 +1,7 @@
 package com.zz4955.concurrent;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.Locale;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
@@ -20,55 +22,108 @@ public abstract class AbstractFuture<V> extends FluentFuture<V> {
             System.getProperty("concurrent.generate_cancellation_cause", "false")
     );
 
+    // 打开后超时用共享的无栈异常，没有cause的取消在get()时抛无栈的CancellationException
+    static final boolean STACKLESS_EXCEPTIONS = Boolean.parseBoolean(
+            System.getProperty("concurrent.stackless_exceptions", "false")
+    );
+
     private static final long SPIN_THREADHOLD_NANOS = 1000L;
+    // 一次提交给同一个executor的listener最多这么多个，免得一批占住线程太久
+    private static final int MAX_LISTENER_BATCH = 16;
     private static final AtomicHelper ATOMIC_HELPER;
     private static final Object NULL = new Object();
 
     private volatile Object value;
-    private volatile Listener listeners;
-    private volatile Waiter waiters;
+    // null、只有一个directExecutor listener时的Runnable本身、Listener栈，或者完成后的TOMBOSTONE
+    private volatile Object listeners;
+    // null、只有一个线程在等时的Thread本身、Waiter栈，或者完成后的TOMBSTONE
+    private volatile Object waiters;
 
     protected AbstractFuture() {}
 
     static {
         AtomicHelper helper;
-        Throwable thrownUnsafeFailure = null;
+        Throwable thrownVarHandleFailure = null;
         Throwable thrownAtomicReferenceFieldUpdaterFailure =  null;
 
-//        try {
-//            helper = new UnsafeAtomicHelper();
-//        } catch (Throwable unsafeFailure) {
-//            thrownUnsafeFailure = unsafeFailure;
+        try {
+            helper = new VarHandleAtomicHelper();
+        } catch (Throwable varHandleFailure) {
+            thrownVarHandleFailure = varHandleFailure;
             try {
                 helper = new SafeAtomicHelper(
                         newUpdater(Waiter.class, Thread.class, "thread"),
                         newUpdater(Waiter.class, Waiter.class, "next"),
-                        newUpdater(AbstractFuture.class, Waiter.class, "waiters"),
-                        newUpdater(AbstractFuture.class, Listener.class, "listeners"),
+                        newUpdater(AbstractFuture.class, Object.class, "waiters"),
+                        newUpdater(AbstractFuture.class, Object.class, "listeners"),
                         newUpdater(AbstractFuture.class, Object.class, "value")
                 );
             } catch (Throwable atomicReferenceFieldUpdaterFailure) {
                 thrownAtomicReferenceFieldUpdaterFailure = atomicReferenceFieldUpdaterFailure;
                 helper = new SynchronizedHelper();
             }
-//        }
+        }
         ATOMIC_HELPER = helper;
         Class<?> ensureLoaded = LockSupport.class;
         if(thrownAtomicReferenceFieldUpdaterFailure != null) {
-            log.log(Level.SEVERE, "UnsafeAtomicHelper is broken!", thrownUnsafeFailure);
+            log.log(Level.SEVERE, "VarHandleAtomicHelper is broken!", thrownVarHandleFailure);
             log.log(Level.SEVERE, "SafeAtomicHelper is broken!", thrownAtomicReferenceFieldUpdaterFailure);
         }
     }
 
+    // 把当前线程挂到waiters上：没有别的线程在等时直接放Thread，不分配节点；已经有等待者时才用栈。
+    // 返回的节点给removeWaiter用，直接放Thread时返回null；future已经完成时返回TOMBSTONE。
+    private Waiter addWaiter() {
+        Thread current = Thread.currentThread();
+        Waiter node = null;
+        Object oldHead = waiters;
+        while(oldHead != Waiter.TOMBSTONE) {
+            if(oldHead == null) {
+                if(ATOMIC_HELPER.casWaiters(this, null, current)) {
+                    return null;
+                }
+            } else {
+                if(node == null) {
+                    node = new Waiter();
+                }
+                node.setNext(oldHead instanceof Thread ? new Waiter((Thread) oldHead) : (Waiter) oldHead);
+                if(ATOMIC_HELPER.casWaiters(this, oldHead, node)) {
+                    return node;
+                }
+            }
+            oldHead = waiters;
+        }
+        return Waiter.TOMBSTONE;
+    }
+
     private void removeWaiter(Waiter node) {
-        node.thread = null;
+        if(node == null) {
+            Thread current = Thread.currentThread();
+            if(ATOMIC_HELPER.casWaiters(this, current, null)) {
+                return ;
+            }
+            // 第二个线程来等的时候已经把这个Thread放进了栈里，同一个线程在这个栈里最多出现一次
+            Object head = waiters;
+            if(!(head instanceof Waiter) || head == Waiter.TOMBSTONE) {
+                return ;
+            }
+            for(Waiter w = (Waiter) head; w != null; w = w.next) {
+                if(w.thread == current) {
+                    ATOMIC_HELPER.putThread(w, null);
+                    break;
+                }
+            }
+        } else {
+            ATOMIC_HELPER.putThread(node, null);
+        }
         restart:
         while(true) {
             Waiter pred = null;
-            Waiter curr = waiters;
-            if(curr == Waiter.TOMBSTONE) {
+            Object head = waiters;
+            if(!(head instanceof Waiter) || head == Waiter.TOMBSTONE) {
                 return ;
             }
+            Waiter curr = (Waiter) head;
             Waiter succ;
             while(curr != null) {
                 succ = curr.next;
@@ -99,33 +154,36 @@ public abstract class AbstractFuture<V> extends FluentFuture<V> {
             return getDoneValue(localValue);
         }
         final long endNanos = remainingNanos > 0 ? System.nanoTime() + remainingNanos : 0;
+        if(remainingNanos > 0) {
+            // 策略返回true只是提示，以value为准，没完成就照常挂起
+            if(waitStrategy().await(this, remainingNanos)) {
+                localValue = value;
+                if(localValue != null & !(localValue instanceof SetFuture)) {
+                    return getDoneValue(localValue);
+                }
+            }
+            remainingNanos = endNanos - System.nanoTime();
+        }
         long_wait_loop:
         if(remainingNanos >= SPIN_THREADHOLD_NANOS) {
-            Waiter oldHead = waiters;
-            if(oldHead != Waiter.TOMBSTONE) {
-                Waiter node = new Waiter();
-                do {
-                    node.setNext(oldHead);
-                    if(ATOMIC_HELPER.casWaiters(this, oldHead, node)) {
-                        while(true) {
-                            LockSupport.parkNanos(this, remainingNanos);
-                            if(Thread.interrupted()) {
-                                removeWaiter(node);
-                                throw new InterruptedException();
-                            }
-                            localValue = value;
-                            if(localValue != null & !(localValue instanceof SetFuture)) {
-                                return getDoneValue(localValue);
-                            }
-                            remainingNanos = endNanos - System.nanoTime();
-                            if(remainingNanos < SPIN_THREADHOLD_NANOS) {
-                                removeWaiter(node);
-                                break long_wait_loop;
-                            }
-                        }
+            Waiter node = addWaiter();
+            if(node != Waiter.TOMBSTONE) {
+                while(true) {
+                    LockSupport.parkNanos(this, remainingNanos);
+                    if(Thread.interrupted()) {
+                        removeWaiter(node);
+                        throw new InterruptedException();
                     }
-                    oldHead = waiters;
-                } while (oldHead != Waiter.TOMBSTONE);
+                    localValue = value;
+                    if(localValue != null & !(localValue instanceof SetFuture)) {
+                        return getDoneValue(localValue);
+                    }
+                    remainingNanos = endNanos - System.nanoTime();
+                    if(remainingNanos < SPIN_THREADHOLD_NANOS) {
+                        removeWaiter(node);
+                        break long_wait_loop;
+                    }
+                }
             }
             return getDoneValue(value);
         }
@@ -168,35 +226,42 @@ public abstract class AbstractFuture<V> extends FluentFuture<V> {
         if(localValue != null & !(localValue instanceof SetFuture)) {
             return getDoneValue(localValue);
         }
-        Waiter oldHead = waiters;
-        if(oldHead != Waiter.TOMBSTONE) {
-            Waiter node = new Waiter();
-            do {
-                node.setNext(oldHead);
-                if(ATOMIC_HELPER.casWaiters(this, oldHead, node)) {
-                    while (true) {
-                        LockSupport.park(this);
-                        if(Thread.interrupted()) {
-                            removeWaiter(node);
-                            throw new InterruptedException();
-                        }
-                        localValue = value;
-                        if(localValue != null & !(localValue instanceof SetFuture)) {
-                            return getDoneValue(localValue);
-                        }
-                    }
+        if(waitStrategy().await(this, Long.MAX_VALUE)) {
+            localValue = value;
+            if(localValue != null & !(localValue instanceof SetFuture)) {
+                return getDoneValue(localValue);
+            }
+        }
+        Waiter node = addWaiter();
+        if(node != Waiter.TOMBSTONE) {
+            while (true) {
+                LockSupport.park(this);
+                if(Thread.interrupted()) {
+                    removeWaiter(node);
+                    throw new InterruptedException();
+                }
+                localValue = value;
+                if(localValue != null & !(localValue instanceof SetFuture)) {
+                    return getDoneValue(localValue);
                 }
-                oldHead = waiters;
-            } while (oldHead != Waiter.TOMBSTONE);
+            }
         }
         return getDoneValue(value);
     }
 
     private V getDoneValue(Object obj) throws ExecutionException {
         if(obj instanceof Cancellation) {
-            throw cancellationExceptionWithCause("Task was cancelled.", ((Cancellation) obj).cause);
+            Throwable cause = ((Cancellation) obj).cause;
+            if(cause == null & STACKLESS_EXCEPTIONS) {
+                throw new StacklessCancellationException();
+            }
+            throw cancellationExceptionWithCause("Task was cancelled.", cause);
         } else if(obj instanceof Failure) {
-            throw new ExecutionException(((Failure) obj).exception);
+            Failure failure = (Failure) obj;
+            if(failure.stackless) {
+                throw new StacklessExecutionException(failure.exception);
+            }
+            throw new ExecutionException(failure.exception);
         } else if(obj == NULL) {
             return null;
         } else {
@@ -292,6 +357,11 @@ public abstract class AbstractFuture<V> extends FluentFuture<V> {
 
     protected void interruptTask() {}
 
+    // get()挂起之前的等待方式，默认是WaitStrategy的全局设置
+    protected WaitStrategy waitStrategy() {
+        return WaitStrategy.DEFAULT;
+    }
+
     protected final boolean wasInterrupted() {
         final Object localValue = value;
         return (localValue instanceof Cancellation) && ((Cancellation) localValue).wasInterrupted;
@@ -301,16 +371,26 @@ public abstract class AbstractFuture<V> extends FluentFuture<V> {
     public void addListener(Runnable listener, Executor executor) {
         checkNotNull(listener, "Runnable was null.");
         checkNotNull(executor, "Executor was null.");
-        Listener oldHead = listeners;
+        Object oldHead = listeners;
         if(oldHead != Listener.TOMBOSTONE) {
+            // 第一个listener用directExecutor时直接放进listeners，不分配节点
+            if(oldHead == null & executor == directExecutor()) {
+                if(ATOMIC_HELPER.casListeners(this, null, listener)) {
+                    return ;
+                }
+                oldHead = listeners;
+            }
             Listener newNode = new Listener(listener, executor);
-            do {
-                newNode.next = oldHead;
+            while(oldHead != Listener.TOMBOSTONE) {
+                // 来了第二个listener，才把第一个放进节点
+                newNode.next = (oldHead == null || oldHead instanceof Listener)
+                        ? (Listener) oldHead
+                        : new Listener((Runnable) oldHead, directExecutor());
                 if(ATOMIC_HELPER.casListeners(this, oldHead, newNode)) {
                     return ;
                 }
                 oldHead = listeners;
-            } while (oldHead != Listener.TOMBOSTONE);
+            }
         }
         executeListener(listener, executor);
     }
@@ -333,6 +413,15 @@ public abstract class AbstractFuture<V> extends FluentFuture<V> {
         return false;
     }
 
+    // 用共享的Failure完成，不再分配
+    final boolean setSharedFailure(SharedFailure sharedFailure) {
+        if(ATOMIC_HELPER.casValue(this, null, sharedFailure.failure)) {
+            complete(this);
+            return true;
+        }
+        return false;
+    }
+
     protected boolean setFuture(ListenableFuture<? extends V> future) {
         checkNotNull(future);
         Object localValue = value;
@@ -374,23 +463,44 @@ public abstract class AbstractFuture<V> extends FluentFuture<V> {
         while(true) {
             future.releaseWaiters();
             future.afterDone();
-            next = future.clearListeners(next);
+            Object head = ATOMIC_HELPER.gasListeners(future, Listener.TOMBOSTONE);
             future = null;
+            if(head != null && !(head instanceof Listener)) {
+                // 只有一个directExecutor listener，在剩下的listener之前执行
+                Runnable task = (Runnable) head;
+                if(task instanceof SetFuture) {
+                    future = completeSetFuture((SetFuture<?>) task);
+                    if(future != null) {
+                        continue outer;
+                    }
+                } else {
+                    executeListener(task, directExecutor());
+                }
+                head = null;
+            }
+            next = reverseListeners((Listener) head, next);
             while(next != null) {
                 Listener curr = next;
                 next = next.next;
                 Runnable task = curr.task;
                 if(task instanceof SetFuture) {
-                    SetFuture<?> setFuture = (SetFuture<?>) task;
-                    future = setFuture.owner;
-                    if(future.value == setFuture) {
-                        Object valueToSet = getFutureValue(setFuture.future);
-                        if(ATOMIC_HELPER.casValue(future, setFuture, valueToSet)) {
-                            continue outer;
-                        }
+                    future = completeSetFuture((SetFuture<?>) task);
+                    if(future != null) {
+                        continue outer;
                     }
                 } else {
-                    executeListener(task, curr.executor);
+                    Executor executor = curr.executor;
+                    if(executor == directExecutor() || next == null || next.executor != executor) {
+                        executeListener(task, executor);
+                    } else {
+                        // 相邻的、用同一个executor的listener合成一批，只提交一次
+                        int size = 1;
+                        while(size < MAX_LISTENER_BATCH && next != null && next.executor == executor) {
+                            size ++;
+                            next = next.next;
+                        }
+                        executeListener(new ListenerBatch(curr, size), executor);
+                    }
                 }
             }
             break;
@@ -410,22 +520,30 @@ public abstract class AbstractFuture<V> extends FluentFuture<V> {
     }
 
     private void releaseWaiters() {
-        Waiter head;
-        do {
-            head = waiters;
-        } while (!ATOMIC_HELPER.casWaiters(this, head, Waiter.TOMBSTONE));
+        Object head = ATOMIC_HELPER.gasWaiters(this, Waiter.TOMBSTONE);
+        if(head instanceof Thread) {
+            LockSupport.unpark((Thread) head);
+            return ;
+        }
 
-        for(Waiter currentWaiter = head; currentWaiter != null; currentWaiter = currentWaiter.next) {
+        for(Waiter currentWaiter = (Waiter) head; currentWaiter != null; currentWaiter = currentWaiter.next) {
             currentWaiter.unpark();
         }
     }
 
-    private Listener clearListeners(Listener onto) {
-        Listener head;
-        do {
-            head = listeners;
-        } while (!ATOMIC_HELPER.casListeners(this, head, Listener.TOMBOSTONE));
+    // 用setFuture的结果完成它的owner，成功时返回owner，由complete()接着完成owner
+    private static AbstractFuture<?> completeSetFuture(SetFuture<?> setFuture) {
+        AbstractFuture<?> owner = setFuture.owner;
+        if(owner.value == setFuture) {
+            Object valueToSet = getFutureValue(setFuture.future);
+            if(ATOMIC_HELPER.casValue(owner, setFuture, valueToSet)) {
+                return owner;
+            }
+        }
+        return null;
+    }
 
+    private static Listener reverseListeners(Listener head, Listener onto) {
         Listener reversedList = onto;
         while(head != null) {
             Listener tmp = head;
@@ -565,6 +683,10 @@ public abstract class AbstractFuture<V> extends FluentFuture<V> {
             ATOMIC_HELPER.putThread(this, Thread.currentThread());
         }
 
+        Waiter(Thread thread) {
+            ATOMIC_HELPER.putThread(this, thread);
+        }
+
         void setNext(Waiter next) {
             ATOMIC_HELPER.putNext(this, next);
         }
@@ -572,7 +694,7 @@ public abstract class AbstractFuture<V> extends FluentFuture<V> {
         void unpark() {
             Thread w = thread;
             if(w != null) {
-                thread = null;
+                ATOMIC_HELPER.putThread(this, null);
                 LockSupport.unpark(w);
             }
         }
@@ -591,6 +713,45 @@ public abstract class AbstractFuture<V> extends FluentFuture<V> {
         }
     }
 
+    // 从first开始的size个listener按注册顺序依次执行，这些节点已经从listeners上摘下来了，不会再被改动
+    private static final class ListenerBatch implements Runnable {
+        private final Listener first;
+        private final int size;
+
+        ListenerBatch(Listener first, int size) {
+            this.first = first;
+            this.size = size;
+        }
+
+        @Override
+        public void run() {
+            Listener curr = first;
+            int i = 0;
+            try {
+                for(; i < size; i ++) {
+                    Runnable task = curr.task;
+                    curr = curr.next;
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        log.log(Level.SEVERE, "RuntimeException while executing runnable " + task, e);
+                    }
+                }
+            } finally {
+                // 第i个listener抛了Error：剩下的另起一批交给executor，和每个listener单独execute时一样互不影响，Error照常抛出
+                int remaining = size - i - 1;
+                if(remaining > 0) {
+                    executeListener(remaining == 1 ? curr.task : new ListenerBatch(curr, remaining), curr.executor);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "ListenerBatch[first=" + first.task + ", size=" + size + "]";
+        }
+    }
+
     private static final class Failure {
         static final Failure FALLBACK_INSTANCE = new Failure(
                 new Throwable("Failure occurred while trying to finish a future.") {
@@ -602,9 +763,51 @@ public abstract class AbstractFuture<V> extends FluentFuture<V> {
         );
 
         final Throwable exception;
+        // 只有共享的Failure才是true，get()时抛无栈的ExecutionException
+        final boolean stackless;
 
         Failure(Throwable exception) {
+            this(exception, false);
+        }
+
+        Failure(Throwable exception, boolean stackless) {
             this.exception = checkNotNull(exception);
+            this.stackless = stackless;
+        }
+    }
+
+    /**
+     * 可以被很多future共用的失败结果，exception应该是没有栈、cause已经定下来的；它会被所有future的调用者看到，只能读。
+     * get()每次抛一个新的无栈ExecutionException，调用者往里addSuppressed不会影响别的调用者。
+     */
+    static final class SharedFailure {
+        private final Failure failure;
+
+        SharedFailure(Throwable exception) {
+            this.failure = new Failure(exception, true);
+        }
+    }
+
+    private static final class StacklessExecutionException extends ExecutionException {
+        StacklessExecutionException(Throwable cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    private static final class StacklessCancellationException extends CancellationException {
+        StacklessCancellationException() {
+            super("Task was cancelled.");
+            initCause(null);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
         }
     }
 
@@ -655,98 +858,82 @@ public abstract class AbstractFuture<V> extends FluentFuture<V> {
     private abstract static class AtomicHelper {
         abstract void putThread(Waiter waiter, Thread newValue);
         abstract void putNext(Waiter waiter, Waiter newValue);
-        abstract boolean casWaiters(AbstractFuture<?> future, Waiter expect, Waiter update);
-        abstract boolean casListeners(AbstractFuture<?> future, Listener expect, Listener update);
+        abstract boolean casWaiters(AbstractFuture<?> future, Object expect, Object update);
+        abstract boolean casListeners(AbstractFuture<?> future, Object expect, Object update);
         abstract boolean casValue(AbstractFuture<?> future, Object expect, Object update);
+        abstract Object gasWaiters(AbstractFuture<?> future, Object update);
+        abstract Object gasListeners(AbstractFuture<?> future, Object update);
     }
 
-    /*
-    private static final class UnsafeAtomicHelper extends AtomicHelper {
-        static final sun.misc.Unsafe UNSAFE;
-        static final long LISTENERS_OFFSET;
-        static final long WAITERS_OFFSET;
-        static final long VALUE_OFFSET;
-        static final long WAITER_THREAD_OFFSET;
-        static final long WAITER_NEXT_OFFSET;
+    private static final class VarHandleAtomicHelper extends AtomicHelper {
+        static final VarHandle WAITER_THREAD;
+        static final VarHandle WAITER_NEXT;
+        static final VarHandle WAITERS;
+        static final VarHandle LISTENERS;
+        static final VarHandle VALUE;
 
         static {
-            sun.misc.Unsafe unsafe = null;
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
             try {
-                unsafe = sun.misc.Unsafe.getUnsafe();
-            } catch (SecurityException tryReflectionInstead) {
-                try {
-                    unsafe = AccessController.doPrivileged(
-                            new PrivilegedExceptionAction<sun.misc.Unsafe>() {
-                                @Override
-                                public sun.misc.Unsafe run() throws Exception {
-                                    Class<sun.misc.Unsafe> k = sun.misc.Unsafe.class;
-                                    for(java.lang.reflect.Field f : k.getDeclaredFields()) {
-                                        f.setAccessible(true);
-                                        Object x = f.get(null);
-                                        if(k.isInstance(x)) {
-                                            return k.cast(x);
-                                        }
-                                    }
-                                    throw new NoSuchFieldError("the Unsafe");
-                                }
-                            }
-                    );
-                } catch (PrivilegedActionException e) {
-                    throw new RuntimeException("Could not initialize intrinsics", e.getCause());
-                }
-            }
-            try {
-                Class<?> abstractFuture = AbstractFuture.class;
-                WAITERS_OFFSET = unsafe.objectFieldOffset(abstractFuture.getDeclaredField("waiters"));
-                LISTENERS_OFFSET = unsafe.objectFieldOffset(abstractFuture.getDeclaredField("listeners"));
-                VALUE_OFFSET = unsafe.objectFieldOffset(abstractFuture.getDeclaredField("value"));
-                WAITER_THREAD_OFFSET = unsafe.objectFieldOffset(Waiter.class.getDeclaredField("thread"));
-                WAITER_NEXT_OFFSET = unsafe.objectFieldOffset(Waiter.class.getDeclaredField("next"));
-                UNSAFE = unsafe;
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+                WAITER_THREAD = lookup.findVarHandle(Waiter.class, "thread", Thread.class);
+                WAITER_NEXT = lookup.findVarHandle(Waiter.class, "next", Waiter.class);
+                WAITERS = lookup.findVarHandle(AbstractFuture.class, "waiters", Object.class);
+                LISTENERS = lookup.findVarHandle(AbstractFuture.class, "listeners", Object.class);
+                VALUE = lookup.findVarHandle(AbstractFuture.class, "value", Object.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
             }
         }
 
+        // Waiter的thread/next只需要在CAS进waiters栈之前对其他线程可见，release写就够了。
         @Override
         void putThread(Waiter waiter, Thread newValue) {
-            UNSAFE.putObject(waiter, WAITER_THREAD_OFFSET, newValue);
+            WAITER_THREAD.setRelease(waiter, newValue);
         }
 
         @Override
         void putNext(Waiter waiter, Waiter newValue) {
-            UNSAFE.putObject(waiter, WAITER_NEXT_OFFSET, newValue);
+            WAITER_NEXT.setRelease(waiter, newValue);
         }
 
         @Override
-        boolean casWaiters(AbstractFuture<?> future, Waiter expect, Waiter update) {
-            return UNSAFE.compareAndSwapObject(future, WAITERS_OFFSET, expect, update);
+        boolean casWaiters(AbstractFuture<?> future, Object expect, Object update) {
+            return WAITERS.compareAndSet(future, expect, update);
         }
 
         @Override
-        boolean casListeners(AbstractFuture<?> future, Listener expect, Listener update) {
-            return UNSAFE.compareAndSwapObject(future, LISTENERS_OFFSET, expect, update);
+        boolean casListeners(AbstractFuture<?> future, Object expect, Object update) {
+            return LISTENERS.compareAndSet(future, expect, update);
         }
 
         @Override
         boolean casValue(AbstractFuture<?> future, Object expect, Object update) {
-            return UNSAFE.compareAndSwapObject(future, VALUE_OFFSET, expect, update);
+            return VALUE.compareAndSet(future, expect, update);
+        }
+
+        @Override
+        Object gasWaiters(AbstractFuture<?> future, Object update) {
+            return WAITERS.getAndSet(future, update);
+        }
+
+        @Override
+        Object gasListeners(AbstractFuture<?> future, Object update) {
+            return LISTENERS.getAndSet(future, update);
         }
     }
-    */
 
     private static final class SafeAtomicHelper extends AtomicHelper {
         final AtomicReferenceFieldUpdater<Waiter, Thread> waiterThreadUpdater;
         final AtomicReferenceFieldUpdater<Waiter, Waiter> waiterNextUpdater;
-        final AtomicReferenceFieldUpdater<AbstractFuture, Waiter> waitersUpdater;
-        final AtomicReferenceFieldUpdater<AbstractFuture, Listener> listenersUpdater;
+        final AtomicReferenceFieldUpdater<AbstractFuture, Object> waitersUpdater;
+        final AtomicReferenceFieldUpdater<AbstractFuture, Object> listenersUpdater;
         final AtomicReferenceFieldUpdater<AbstractFuture, Object> valueUpdater;
 
         SafeAtomicHelper(
                 AtomicReferenceFieldUpdater<Waiter, Thread> waiterThreadUpdater,
                 AtomicReferenceFieldUpdater<Waiter, Waiter> waiterNextUpdater,
-                AtomicReferenceFieldUpdater<AbstractFuture, Waiter> waitersUpdater,
-                AtomicReferenceFieldUpdater<AbstractFuture, Listener> listenersUpdater,
+                AtomicReferenceFieldUpdater<AbstractFuture, Object> waitersUpdater,
+                AtomicReferenceFieldUpdater<AbstractFuture, Object> listenersUpdater,
                 AtomicReferenceFieldUpdater<AbstractFuture, Object> valueUpdater) {
             this.waiterThreadUpdater = waiterThreadUpdater;
             this.waiterNextUpdater = waiterNextUpdater;
@@ -766,12 +953,12 @@ public abstract class AbstractFuture<V> extends FluentFuture<V> {
         }
 
         @Override
-        boolean casWaiters(AbstractFuture<?> future, Waiter expect, Waiter update) {
+        boolean casWaiters(AbstractFuture<?> future, Object expect, Object update) {
             return waitersUpdater.compareAndSet(future, expect, update);
         }
 
         @Override
-        boolean casListeners(AbstractFuture<?> future, Listener expect, Listener update) {
+        boolean casListeners(AbstractFuture<?> future, Object expect, Object update) {
             return listenersUpdater.compareAndSet(future, expect, update);
         }
 
@@ -779,6 +966,16 @@ public abstract class AbstractFuture<V> extends FluentFuture<V> {
         boolean casValue(AbstractFuture<?> future, Object expect, Object update) {
             return valueUpdater.compareAndSet(future, expect, update);
         }
+
+        @Override
+        Object gasWaiters(AbstractFuture<?> future, Object update) {
+            return waitersUpdater.getAndSet(future, update);
+        }
+
+        @Override
+        Object gasListeners(AbstractFuture<?> future, Object update) {
+            return listenersUpdater.getAndSet(future, update);
+        }
     }
 
     private static final class SynchronizedHelper extends AtomicHelper {
@@ -794,7 +991,7 @@ public abstract class AbstractFuture<V> extends FluentFuture<V> {
         }
 
         @Override
-        boolean casWaiters(AbstractFuture<?> future, Waiter expect, Waiter update) {
+        boolean casWaiters(AbstractFuture<?> future, Object expect, Object update) {
             synchronized (future) {
                 if(future.waiters == expect) {
                     future.waiters = update;
@@ -805,7 +1002,7 @@ public abstract class AbstractFuture<V> extends FluentFuture<V> {
         }
 
         @Override
-        boolean casListeners(AbstractFuture<?> future, Listener expect, Listener update) {
+        boolean casListeners(AbstractFuture<?> future, Object expect, Object update) {
             synchronized (future) {
                 if(future.listeners == expect) {
                     future.listeners = update;
@@ -825,5 +1022,23 @@ public abstract class AbstractFuture<V> extends FluentFuture<V> {
                 return false;
             }
         }
+
+        @Override
+        Object gasWaiters(AbstractFuture<?> future, Object update) {
+            synchronized (future) {
+                Object old = future.waiters;
+                future.waiters = update;
+                return old;
+            }
+        }
+
+        @Override
+        Object gasListeners(AbstractFuture<?> future, Object update) {
+            synchronized (future) {
+                Object old = future.listeners;
+                future.listeners = update;
+                return old;
+            }
+        }
     }
 }
\ No newline at end of file
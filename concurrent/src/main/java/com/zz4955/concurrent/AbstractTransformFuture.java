@@ -6,6 +6,7 @@ import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 import static com.zz4955.concurrent.Futures.getDone;
+import static com.zz4955.concurrent.MoreExecutors.directExecutor;
 import static com.zz4955.concurrent.Tools.checkNotNull;
 import static com.zz4955.concurrent.Tools.rejectionPropagatingExecutor;
 
@@ -17,6 +18,9 @@ abstract class AbstractTransformFuture<I, O, F, T> extends AbstractFuture.Truste
             Function<? super I, ? extends O> function,
             Executor executor) {
         checkNotNull(executor);
+        if(executor == directExecutor() && input.isDone()) {
+            return immediateTransform(input, checkNotNull(function));
+        }
         TransformFuture<I, O> output = new TransformFuture<>(input, function);
         input.addListener(output, rejectionPropagatingExecutor(executor, output));
         return output;
@@ -32,6 +36,27 @@ abstract class AbstractTransformFuture<I, O, F, T> extends AbstractFuture.Truste
         return output;
     }
 
+    // 输入已经完成且是directExecutor时，结果和TransformFuture.run()算出来的一样，只是不再分配TransformFuture和Listener。
+    private static <I, O> ListenableFuture<O> immediateTransform(
+            ListenableFuture<I> input,
+            Function<? super I, ? extends O> function) {
+        I sourceResult;
+        try {
+            sourceResult = getDone(input);
+        } catch (CancellationException e) {
+            return Futures.immediateCancelledFuture();
+        } catch (ExecutionException e) {
+            return Futures.immediateFailedFuture(e.getCause());
+        } catch (RuntimeException | Error e) {
+            return Futures.immediateFailedFuture(e);
+        }
+        try {
+            return Futures.immediateFuture(function.apply(sourceResult));
+        } catch (Throwable t) {
+            return Futures.immediateFailedFuture(t);
+        }
+    }
+
     ListenableFuture<? extends I> inputFuture;
     F function;
 
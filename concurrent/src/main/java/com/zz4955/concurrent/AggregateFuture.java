@@ -83,9 +83,10 @@ abstract class AggregateFuture<InputT, OutputT> extends AbstractFuture.TrustedFu
             this.collectsValues = collectsValues;
         }
 
+        // 共享的listener只在没有分段计数时注册，下标用不上
         @Override
         public final void run() {
-            decrementCountAndMaybeComplete();
+            decrementCountAndMaybeComplete(0);
         }
 
         private void init() {
@@ -103,11 +104,22 @@ abstract class AggregateFuture<InputT, OutputT> extends AbstractFuture.TrustedFu
                             try {
                                 handleOneInputDone(index, listenableFuture);
                             } finally {
-                                decrementCountAndMaybeComplete();
+                                decrementCountAndMaybeComplete(index);
                             }
                         }
                     }, directExecutor());
                 }
+            } else if(isStriped()) {
+                int i = 0;
+                for(ListenableFuture<? extends InputT> listenableFuture : futures) {
+                    final int index = i ++;
+                    listenableFuture.addListener(new Runnable() {
+                        @Override
+                        public void run() {
+                            decrementCountAndMaybeComplete(index);
+                        }
+                    }, directExecutor());
+                }
             } else {
                 for(ListenableFuture<? extends InputT> listenableFuture : futures) {
                     listenableFuture.addListener(this, directExecutor());
@@ -170,8 +182,8 @@ abstract class AggregateFuture<InputT, OutputT> extends AbstractFuture.TrustedFu
             }
         }
 
-        private void decrementCountAndMaybeComplete() {
-            int newRemaining = decrementRemainingAndGet();
+        private void decrementCountAndMaybeComplete(int index) {
+            int newRemaining = decrementRemainingAndGet(index);
             checkState(newRemaining >= 0, "Less than 0 remaining futures");
             if(newRemaining == 0) {
                 processCompleted();
@@ -1,6 +1,9 @@
 package com.zz4955.concurrent;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.logging.Level;
@@ -12,31 +15,66 @@ import static java.util.concurrent.atomic.AtomicReferenceFieldUpdater.newUpdater
 
 abstract class AggregateFutureState {
 
+    // 属性格式不对时用默认值，不能让类初始化失败
+    private static final int STRIPED_THRESHOLD = Integer.getInteger("concurrent.aggregate_striped_threshold", 1024);
+    private static final int MAX_STRIPES =
+            Integer.highestOneBit(Math.max(Runtime.getRuntime().availableProcessors() * 2 - 1, 1)) << 1;
+    // 每个分段占一个缓存行（16个int）
+    private static final int STRIPE_SHIFT = 4;
+
     private volatile Set<Throwable> seenExceptions = null;
     private volatile int remaining;
+    private final AtomicIntegerArray stripes;
+    private final int stripeMask;
     private static final AtomicHelper ATOMIC_HELPER;
     private static final Logger log = Logger.getLogger(AggregateFutureState.class.getName());
 
     static {
         AtomicHelper helper;
+        Throwable thrownVarHandleFailure = null;
         Throwable thrownReflectionFailure = null;
         try {
-            helper = new SafeAtomicHelper(
-                    newUpdater(AggregateFutureState.class, (Class)Set.class, "seenExceptions"),
-                    newUpdater(AggregateFutureState.class, "remaining")
-            );
-        } catch (Throwable reflectionFailure) {
-            thrownReflectionFailure = reflectionFailure;
-            helper = new SynchronizedAtomicHelper();
+            helper = new VarHandleAtomicHelper();
+        } catch (Throwable varHandleFailure) {
+            thrownVarHandleFailure = varHandleFailure;
+            try {
+                helper = new SafeAtomicHelper(
+                        newUpdater(AggregateFutureState.class, (Class)Set.class, "seenExceptions"),
+                        newUpdater(AggregateFutureState.class, "remaining")
+                );
+            } catch (Throwable reflectionFailure) {
+                thrownReflectionFailure = reflectionFailure;
+                helper = new SynchronizedAtomicHelper();
+            }
         }
         ATOMIC_HELPER = helper;
         if(thrownReflectionFailure != null) {
+            log.log(Level.SEVERE, "VarHandleAtomicHelper is broken!", thrownVarHandleFailure);
             log.log(Level.SEVERE, "SafeAtomicHelper is broken!", thrownReflectionFailure);
         }
     }
 
+    // 输入很多时按下标分段计数：第i个输入只减第(i & stripeMask)段，某一段减到0时才去减remaining（初始为段数）。
     AggregateFutureState(int remainingFutures) {
-        this.remaining = remainingFutures;
+        if(remainingFutures >= STRIPED_THRESHOLD && remainingFutures > 1) {
+            int stripeCount = Math.min(MAX_STRIPES, Integer.highestOneBit(remainingFutures));
+            AtomicIntegerArray localStripes = new AtomicIntegerArray(stripeCount << STRIPE_SHIFT);
+            for(int i = 0; i < stripeCount; i ++) {
+                localStripes.set(i << STRIPE_SHIFT,
+                        remainingFutures / stripeCount + (i < remainingFutures % stripeCount ? 1 : 0));
+            }
+            this.stripes = localStripes;
+            this.stripeMask = stripeCount - 1;
+            this.remaining = stripeCount;
+        } else {
+            this.stripes = null;
+            this.stripeMask = 0;
+            this.remaining = remainingFutures;
+        }
+    }
+
+    final boolean isStriped() {
+        return stripes != null;
     }
 
     final Set<Throwable> getOrInitSeenExceptions() {
@@ -57,11 +95,49 @@ abstract class AggregateFutureState {
         return ATOMIC_HELPER.decrementAndGetRemainingCount(this);
     }
 
+    // 分段时返回值只保证：最后一次返回0，多减了返回负数。
+    final int decrementRemainingAndGet(int index) {
+        AtomicIntegerArray localStripes = stripes;
+        if(localStripes == null) {
+            return decrementRemainingAndGet();
+        }
+        int stripeRemaining = localStripes.decrementAndGet((index & stripeMask) << STRIPE_SHIFT);
+        if(stripeRemaining != 0) {
+            return stripeRemaining;
+        }
+        return decrementRemainingAndGet();
+    }
+
     private abstract static class AtomicHelper {
         abstract void compareAndSetSeenExceptions(AggregateFutureState state, Set<Throwable> expect, Set<Throwable> update);
         abstract int decrementAndGetRemainingCount(AggregateFutureState state);
     }
 
+    private static final class VarHandleAtomicHelper extends AtomicHelper {
+        static final VarHandle SEEN_EXCEPTIONS;
+        static final VarHandle REMAINING;
+
+        static {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            try {
+                SEEN_EXCEPTIONS = lookup.findVarHandle(AggregateFutureState.class, "seenExceptions", Set.class);
+                REMAINING = lookup.findVarHandle(AggregateFutureState.class, "remaining", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        @Override
+        void compareAndSetSeenExceptions(AggregateFutureState state, Set<Throwable> expect, Set<Throwable> update) {
+            SEEN_EXCEPTIONS.compareAndSet(state, expect, update);
+        }
+
+        @Override
+        int decrementAndGetRemainingCount(AggregateFutureState state) {
+            return (int) REMAINING.getAndAdd(state, -1) - 1;
+        }
+    }
+
     private static final class SafeAtomicHelper extends AtomicHelper {
         final AtomicReferenceFieldUpdater<AggregateFutureState, Set<Throwable>> seenExceptionsUpdater;
         final AtomicIntegerFieldUpdater<AggregateFutureState> remainingCountUpdater;
@@ -1,40 +1,32 @@
 package com.zz4955.concurrent;
 
-import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableCollection;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
 
-import java.util.Collections;
+import java.util.AbstractList;
 import java.util.List;
+import java.util.RandomAccess;
 
 import static com.zz4955.concurrent.Tools.checkState;
 
 abstract class CollectionFuture<V, C> extends AggregateFuture<V, C> {
 
     abstract class CollectionFutureRunningState extends RunningState {
-        private List<Optional<V>> values;
+        // 没有结果的输入（successfulAsList里失败或取消的）和结果为null的输入一样留null，不需要再区分
+        private Object[] values;
 
         CollectionFutureRunningState(
                 ImmutableCollection<? extends ListenableFuture<? extends V>> futures,
                 boolean allMustSucceed) {
             super(futures, allMustSucceed, true);
-
-            this.values = futures.isEmpty()
-                    ? ImmutableList.<Optional<V>>of()
-                    : Lists.<Optional<V>>newArrayListWithCapacity(futures.size());
-
-            for(int i = 0; i < futures.size(); i ++) {
-                values.add(null);
-            }
+            this.values = new Object[futures.size()];
         }
 
         @Override
         final void collectOneValue(boolean allMustSucceed, int index, V returnValue) {
-            List<Optional<V>> localValues = values;
+            Object[] localValues = values;
 
             if(localValues != null) {
-                localValues.set(index, Optional.fromNullable(returnValue));
+                localValues[index] = returnValue;
             } else {
                 checkState(allMustSucceed || isCancelled(), "Future was done before all dependencies completed");
             }
@@ -42,8 +34,9 @@ abstract class CollectionFuture<V, C> extends AggregateFuture<V, C> {
 
         @Override
         final void handleAllCompleted() {
-            List<Optional<V>> localValues = values;
+            Object[] localValues = values;
             if(localValues != null) {
+                this.values = null;
                 set(combine(localValues));
             } else {
                 checkState(isDone());
@@ -56,7 +49,7 @@ abstract class CollectionFuture<V, C> extends AggregateFuture<V, C> {
             this.values = null;
         }
 
-        abstract C combine(List<Optional<V>> values);
+        abstract C combine(Object[] values);
     }
 
     static final class ListFuture<V> extends CollectionFuture<V, List<V>> {
@@ -70,13 +63,29 @@ abstract class CollectionFuture<V, C> extends AggregateFuture<V, C> {
             }
 
             @Override
-            public List<V> combine(List<Optional<V>> values) {
-                List<V> result = Lists.newArrayListWithCapacity(values.size());
-                for(Optional<V> element : values) {
-                    result.add(element != null ? element.orNull() : null);
-                }
-                return Collections.unmodifiableList(result);
+            public List<V> combine(Object[] values) {
+                return new ArrayView<V>(values);
             }
         }
     }
+
+    // 收集结果的数组直接作为结果的只读视图，数组不会再被写入
+    static final class ArrayView<V> extends AbstractList<V> implements RandomAccess {
+        private final Object[] values;
+
+        ArrayView(Object[] values) {
+            this.values = values;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public V get(int index) {
+            return (V) values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
 }
@@ -0,0 +1,172 @@
+package com.zz4955.concurrent;
+
+import com.google.common.collect.ImmutableCollection;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.zz4955.concurrent.Tools.checkNotNull;
+import static com.zz4955.concurrent.Tools.checkState;
+
+final class CombinedFuture<V> extends AggregateFuture<Object, V> {
+
+    CombinedFuture(
+            ImmutableCollection<? extends ListenableFuture<?>> futures,
+            boolean allMustSucceed,
+            Executor listenerExecutor,
+            AsyncCallable<V> callable) {
+        init(new CombinedFutureRunningState(
+                futures,
+                allMustSucceed,
+                new AsyncCallableInterruptibleTask(callable, listenerExecutor)));
+    }
+
+    CombinedFuture(
+            ImmutableCollection<? extends ListenableFuture<?>> futures,
+            boolean allMustSucceed,
+            Executor listenerExecutor,
+            Callable<V> callable) {
+        init(new CombinedFutureRunningState(
+                futures,
+                allMustSucceed,
+                new CallableInterruptibleTask(callable, listenerExecutor)));
+    }
+
+    private final class CombinedFutureRunningState extends RunningState {
+        private CombinedFutureInterruptibleTask<?> task;
+
+        CombinedFutureRunningState(
+                ImmutableCollection<? extends ListenableFuture<?>> futures,
+                boolean allMustSucceed,
+                CombinedFutureInterruptibleTask<?> task) {
+            super(futures, allMustSucceed, false);
+            this.task = task;
+        }
+
+        @Override
+        void collectOneValue(boolean allMustSucceed, int index, Object returnValue) {}
+
+        @Override
+        void handleAllCompleted() {
+            CombinedFutureInterruptibleTask<?> localTask = task;
+            if(localTask != null) {
+                localTask.execute();
+            } else {
+                checkState(isDone());
+            }
+        }
+
+        @Override
+        void releaseResourcesAfterFailure() {
+            super.releaseResourcesAfterFailure();
+            this.task = null;
+        }
+
+        @Override
+        void interruptTask() {
+            CombinedFutureInterruptibleTask<?> localTask = task;
+            if(localTask != null) {
+                localTask.interruptTask();
+            }
+        }
+    }
+
+    private abstract class CombinedFutureInterruptibleTask<T> extends InterruptibleTask<T> {
+        private final Executor listenerExecutor;
+        boolean thrownByExecute = true;
+
+        CombinedFutureInterruptibleTask(Executor listenerExecutor) {
+            this.listenerExecutor = checkNotNull(listenerExecutor);
+        }
+
+        @Override
+        final boolean isDone() {
+            return CombinedFuture.this.isDone();
+        }
+
+        final void execute() {
+            try {
+                listenerExecutor.execute(this);
+            } catch (RejectedExecutionException e) {
+                if(thrownByExecute) {
+                    CombinedFuture.this.setException(e);
+                }
+            }
+        }
+
+        @Override
+        final void afterRanInterruptibly(T result, Throwable error) {
+            if(error != null) {
+                if(error instanceof ExecutionException) {
+                    CombinedFuture.this.setException(error.getCause());
+                } else if(error instanceof CancellationException) {
+                    CombinedFuture.this.cancel(false);
+                } else {
+                    CombinedFuture.this.setException(error);
+                }
+            } else {
+                setValue(result);
+            }
+        }
+
+        abstract void setValue(T value);
+    }
+
+    private final class AsyncCallableInterruptibleTask
+            extends CombinedFutureInterruptibleTask<ListenableFuture<V>> {
+        private final AsyncCallable<V> callable;
+
+        AsyncCallableInterruptibleTask(AsyncCallable<V> callable, Executor listenerExecutor) {
+            super(listenerExecutor);
+            this.callable = checkNotNull(callable);
+        }
+
+        @Override
+        ListenableFuture<V> runInterruptibly() throws Exception {
+            thrownByExecute = false;
+            return checkNotNull(
+                    callable.call(),
+                    "AsyncCallable.call returned null instead of a Future. "
+                    + "Did you mean to return immediateFuture(null)?"
+            );
+        }
+
+        @Override
+        void setValue(ListenableFuture<V> value) {
+            setFuture(value);
+        }
+
+        @Override
+        String toPendingString() {
+            return callable.toString();
+        }
+    }
+
+    private final class CallableInterruptibleTask extends CombinedFutureInterruptibleTask<V> {
+        private final Callable<V> callable;
+
+        CallableInterruptibleTask(Callable<V> callable, Executor listenerExecutor) {
+            super(listenerExecutor);
+            this.callable = checkNotNull(callable);
+        }
+
+        @Override
+        V runInterruptibly() throws Exception {
+            thrownByExecute = false;
+            return callable.call();
+        }
+
+        @Override
+        void setValue(V value) {
+            CombinedFuture.this.set(value);
+        }
+
+        @Override
+        String toPendingString() {
+            return callable.toString();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.zz4955.concurrent;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.zz4955.concurrent.Futures.getDone;
+import static com.zz4955.concurrent.MoreExecutors.directExecutor;
+import static com.zz4955.concurrent.Tools.checkNotNull;
+
+/**
+ * ListenableFuture和CompletableFuture互相转换。两个方向都只分配一个桥接对象，它本身就是结果，
+ * 同时作为对方的回调，在完成对方的线程上直接完成自己，不经过别的executor。取消在两个方向上都会传过去。
+ */
+final class CompletableFutureBridge {
+
+    private static final Logger log = Logger.getLogger(CompletableFutureBridge.class.getName());
+
+    private CompletableFutureBridge() {}
+
+    static <V> CompletableFuture<V> toCompletableFuture(ListenableFuture<V> future) {
+        ListenableCompletableFuture<V> bridge = new ListenableCompletableFuture<>(checkNotNull(future));
+        future.addListener(bridge, directExecutor());
+        return bridge;
+    }
+
+    static <V> ListenableFuture<V> fromCompletionStage(CompletionStage<V> stage) {
+        CompletionStageFuture<V> bridge = new CompletionStageFuture<>(checkNotNull(stage));
+        stage.whenComplete(bridge);
+        return bridge;
+    }
+
+    private static final class ListenableCompletableFuture<V> extends CompletableFuture<V> implements Runnable {
+
+        // 完成后清空；其他线程读到旧值也只是去取消一个已经完成的future
+        private ListenableFuture<V> source;
+
+        ListenableCompletableFuture(ListenableFuture<V> source) {
+            this.source = source;
+        }
+
+        @Override
+        public void run() {
+            ListenableFuture<V> localSource = source;
+            if(localSource == null) {
+                return ;
+            }
+            source = null;
+            try {
+                complete(getDone(localSource));
+            } catch (ExecutionException e) {
+                completeExceptionally(e.getCause());
+            } catch (CancellationException e) {
+                super.cancel(false);
+            } catch (RuntimeException | Error e) {
+                completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            ListenableFuture<V> localSource = source;
+            if(cancelled && localSource != null) {
+                source = null;
+                localSource.cancel(mayInterruptIfRunning);
+            }
+            return cancelled;
+        }
+
+        // thenApply等派生出来的stage用普通的CompletableFuture，不再带着source
+        @Override
+        public <U> CompletableFuture<U> newIncompleteFuture() {
+            return new CompletableFuture<U>();
+        }
+
+        @Override
+        public String toString() {
+            ListenableFuture<V> localSource = source;
+            String superString = super.toString();
+            return localSource == null ? superString : superString + "[source=[" + localSource + "]]";
+        }
+    }
+
+    private static final class CompletionStageFuture<V> extends AbstractFuture.TrustedFuture<V>
+            implements BiConsumer<V, Throwable> {
+
+        private CompletionStage<V> stage;
+
+        CompletionStageFuture(CompletionStage<V> stage) {
+            this.stage = stage;
+        }
+
+        @Override
+        public void accept(V value, Throwable thrown) {
+            if(thrown == null) {
+                set(value);
+                return ;
+            }
+            // 派生的stage会把异常包在CompletionException里
+            Throwable cause = thrown;
+            if(cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if(cause instanceof CancellationException) {
+                cancel(false);
+            } else {
+                setException(cause);
+            }
+        }
+
+        // toCompletableFuture()可能返回一个副本，取消它没有意义，所以只取消本身是Future的stage；
+        // 即使是Future也可能不支持取消（比如minimalCompletionStage()），afterDone抛异常会打断complete()
+        @Override
+        protected void afterDone() {
+            CompletionStage<V> localStage = stage;
+            this.stage = null;
+            if(localStage instanceof Future) {
+                try {
+                    maybePropagateCancellationTo((Future<?>) localStage);
+                } catch (RuntimeException e) {
+                    log.log(Level.SEVERE, "RuntimeException while cancelling " + localStage, e);
+                }
+            }
+        }
+
+        @Override
+        protected String pendingToString() {
+            CompletionStage<V> localStage = stage;
+            if(localStage != null) {
+                return "stage=[" + localStage + "]";
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.zz4955.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.zz4955.concurrent.Futures.immediateCancelledFuture;
+import static com.zz4955.concurrent.Futures.immediateFuture;
+import static com.zz4955.concurrent.MoreExecutors.directExecutor;
+import static com.zz4955.concurrent.Tools.checkNotNull;
+import static com.zz4955.concurrent.Tools.checkState;
+
+/**
+ * 让提交的异步任务按提交顺序一个接一个地执行：上一个任务返回的future完成之后，下一个任务才开始，等待期间不占用线程。
+ * 每个任务挂在上一个任务的完成信号上，尾部是一个AtomicReference，提交只是一次getAndSet。
+ * 取消返回的future时，还没开始的任务不会再执行；已经开始的任务不受影响，后面的任务照常等它完成。
+ */
+public final class ExecutionSequencer {
+
+    public static ExecutionSequencer create() {
+        return new ExecutionSequencer();
+    }
+
+    // 最后一个任务的完成信号，不管它成功、失败还是被取消，都以null成功完成
+    private final AtomicReference<ListenableFuture<Void>> ref =
+            new AtomicReference<ListenableFuture<Void>>(immediateFuture((Void) null));
+
+    // 正在同步执行任务的线程的任务队列，见TaskNonReentrantExecutor
+    private ThreadConfinedTaskQueue latestTaskQueue = new ThreadConfinedTaskQueue();
+
+    private ExecutionSequencer() {}
+
+    public <T> ListenableFuture<T> submit(final Callable<T> callable, Executor executor) {
+        checkNotNull(callable);
+        checkNotNull(executor);
+        return submitAsync(new AsyncCallable<T>() {
+            @Override
+            public ListenableFuture<T> call() throws Exception {
+                return immediateFuture(callable.call());
+            }
+
+            @Override
+            public String toString() {
+                return callable.toString();
+            }
+        }, executor);
+    }
+
+    public <T> ListenableFuture<T> submitAsync(final AsyncCallable<T> callable, Executor executor) {
+        checkNotNull(callable);
+        checkNotNull(executor);
+        final TaskNonReentrantExecutor taskExecutor = new TaskNonReentrantExecutor(executor, this);
+        AsyncCallable<T> task = new AsyncCallable<T>() {
+            @Override
+            public ListenableFuture<T> call() throws Exception {
+                if(!taskExecutor.trySetStarted()) {
+                    return immediateCancelledFuture();
+                }
+                return callable.call();
+            }
+
+            @Override
+            public String toString() {
+                return callable.toString();
+            }
+        };
+
+        final Link newFuture = new Link();
+        final ListenableFuture<Void> oldFuture = ref.getAndSet(newFuture);
+        final TrustedListenableFutureTask<T> taskFuture = TrustedListenableFutureTask.create(task);
+        oldFuture.addListener(taskFuture, taskExecutor);
+
+        // 取消返回的future不能直接取消taskFuture，已经开始的任务要跑完，后面的任务才能开始
+        final ListenableFuture<T> outputFuture = Futures.nonCancellationPropagating(taskFuture);
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                if(taskFuture.isDone()) {
+                    // 任务正常结束时oldFuture早已完成，setFuture直接取值；
+                    // 只有还没开始就被取消的任务才会挂SetFuture等前一个，这种链由complete()循环展开，不会递归
+                    newFuture.setFuture(oldFuture);
+                } else if(outputFuture.isCancelled() && taskExecutor.trySetCancelled()) {
+                    taskFuture.cancel(false);
+                }
+            }
+        };
+        outputFuture.addListener(listener, directExecutor());
+        taskFuture.addListener(listener, directExecutor());
+        return outputFuture;
+    }
+
+    private static final class Link extends AbstractFuture.TrustedFuture<Void> {}
+
+    private static final class ThreadConfinedTaskQueue {
+        // 下面的字段只在thread上读写
+        Thread thread;
+        Runnable nextTask;
+        Executor nextExecutor;
+    }
+
+    private static final int NOT_RUN = 0;
+    private static final int CANCELLED = 1;
+    private static final int STARTED = 2;
+
+    /**
+     * 只执行一次的Executor，负责在上一个任务完成时启动下一个任务。
+     * delegate是directExecutor时，上一个任务的完成会同步启动下一个任务，几千个排队的任务就是几千层栈。
+     * 所以如果当前线程正在这个sequencer的某个任务的run()里，就只把任务交给那个run()，等它返回后在外层循环里执行。
+     */
+    private static final class TaskNonReentrantExecutor implements Executor, Runnable {
+
+        private final AtomicInteger state = new AtomicInteger(NOT_RUN);
+
+        // 执行前清空，执行后不再持有
+        private ExecutionSequencer sequencer;
+        private Executor delegate;
+        private Runnable task;
+        // 只在execute()里设置，run()用它判断是不是在提交的线程上同步执行
+        private Thread submitting;
+
+        TaskNonReentrantExecutor(Executor delegate, ExecutionSequencer sequencer) {
+            this.delegate = delegate;
+            this.sequencer = sequencer;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if(state.get() == CANCELLED) {
+                delegate = null;
+                sequencer = null;
+                return ;
+            }
+            submitting = Thread.currentThread();
+            try {
+                ThreadConfinedTaskQueue submittingTaskQueue = sequencer.latestTaskQueue;
+                if(submittingTaskQueue.thread == submitting) {
+                    sequencer = null;
+                    checkState(submittingTaskQueue.nextTask == null);
+                    submittingTaskQueue.nextTask = task;
+                    submittingTaskQueue.nextExecutor = delegate;
+                    delegate = null;
+                } else {
+                    Executor localDelegate = delegate;
+                    delegate = null;
+                    this.task = task;
+                    localDelegate.execute(this);
+                }
+            } finally {
+                submitting = null;
+            }
+        }
+
+        @Override
+        public void run() {
+            Thread currentThread = Thread.currentThread();
+            if(currentThread != submitting) {
+                // 在别的线程上执行，不会和提交的线程形成递归
+                Runnable localTask = task;
+                task = null;
+                localTask.run();
+                return ;
+            }
+            ThreadConfinedTaskQueue executingTaskQueue = new ThreadConfinedTaskQueue();
+            executingTaskQueue.thread = currentThread;
+            // 这个写和execute()里的读不在同一个线程时可能看不到，那样只是不走队列，顺序依旧正确
+            sequencer.latestTaskQueue = executingTaskQueue;
+            sequencer = null;
+            try {
+                Runnable localTask = task;
+                task = null;
+                localTask.run();
+                Runnable queuedTask;
+                Executor queuedExecutor;
+                while((queuedTask = executingTaskQueue.nextTask) != null
+                        && (queuedExecutor = executingTaskQueue.nextExecutor) != null) {
+                    executingTaskQueue.nextTask = null;
+                    executingTaskQueue.nextExecutor = null;
+                    queuedExecutor.execute(queuedTask);
+                }
+            } finally {
+                executingTaskQueue.thread = null;
+            }
+        }
+
+        boolean trySetStarted() {
+            return state.compareAndSet(NOT_RUN, STARTED);
+        }
+
+        boolean trySetCancelled() {
+            return state.compareAndSet(NOT_RUN, CANCELLED);
+        }
+    }
+}
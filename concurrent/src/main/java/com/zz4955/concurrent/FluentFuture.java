@@ -1,10 +1,13 @@
 package com.zz4955.concurrent;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
+import static com.zz4955.concurrent.MoreExecutors.directExecutor;
+
 public abstract class FluentFuture<V> implements ListenableFuture<V> {
 
     FluentFuture() {}
@@ -17,6 +20,9 @@ public abstract class FluentFuture<V> implements ListenableFuture<V> {
 
     public final <X extends Throwable> FluentFuture<V> catching(
             Class<X> exceptionType, Function<? super X, ? extends V> fallback, Executor executor) {
+        if(executor == directExecutor() && !isDone()) {
+            return FusedTransformFuture.create(this, exceptionType, fallback);
+        }
         return (FluentFuture<V>) Futures.catching(this, exceptionType, fallback, executor);
     }
 
@@ -30,7 +36,24 @@ public abstract class FluentFuture<V> implements ListenableFuture<V> {
         return (FluentFuture<V>) Futures.withTimeout(this, timeout, unit, scheduledExecutor);
     }
 
+    public final FluentFuture<V> withTimeout(long timeout, TimeUnit unit, TimerWheel timerWheel) {
+        return (FluentFuture<V>) Futures.withTimeout(this, timeout, unit, timerWheel);
+    }
+
+    public final FluentFuture<V> withTimeout(
+            long timeout, TimeUnit unit, ScheduledExecutorService scheduledExecutor, boolean stacklessTimeout) {
+        return (FluentFuture<V>) Futures.withTimeout(this, timeout, unit, scheduledExecutor, stacklessTimeout);
+    }
+
+    public final FluentFuture<V> withTimeout(
+            long timeout, TimeUnit unit, TimerWheel timerWheel, boolean stacklessTimeout) {
+        return (FluentFuture<V>) Futures.withTimeout(this, timeout, unit, timerWheel, stacklessTimeout);
+    }
+
     public final <T> FluentFuture<T> transform(Function<? super V, T> function, Executor executor) {
+        if(executor == directExecutor() && !isDone()) {
+            return FusedTransformFuture.create(this, function);
+        }
         return (FluentFuture<T>) Futures.transform(this, function, executor);
     }
 
@@ -38,6 +61,11 @@ public abstract class FluentFuture<V> implements ListenableFuture<V> {
         return (FluentFuture<T>) Futures.transformAsync(this, function, executor);
     }
 
+    // 返回的CompletableFuture随这个future完成；取消它会取消这个future，反过来也一样
+    public final CompletableFuture<V> toCompletableFuture() {
+        return CompletableFutureBridge.toCompletableFuture(this);
+    }
+
     public final void addCallback(FutureCallback<? super V> callback, Executor executor) {
         Futures.addCallback(this, callback, executor);
     }
@@ -0,0 +1,185 @@
+package com.zz4955.concurrent;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import static com.zz4955.concurrent.Futures.getDone;
+import static com.zz4955.concurrent.MoreExecutors.directExecutor;
+import static com.zz4955.concurrent.Tools.checkNotNull;
+import static com.zz4955.concurrent.Tools.isInstanceOfThrowableClass;
+
+/**
+ * FluentFuture上directExecutor的transform/catching。
+ * 新的一级如果能挂到上一级的successor上，就不再注册Listener；整条同步链由第一级的listener一次跑完。
+ */
+final class FusedTransformFuture<O> extends AbstractFuture.TrustedFuture<O> implements Runnable {
+
+    private static final VarHandle SUCCESSOR;
+    private static final FusedTransformFuture<?> TOMBSTONE = new FusedTransformFuture<>();
+
+    static {
+        try {
+            SUCCESSOR = MethodHandles.lookup()
+                    .findVarHandle(FusedTransformFuture.class, "successor", FusedTransformFuture.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    static <I, O> FluentFuture<O> create(
+            ListenableFuture<I> input,
+            Function<? super I, ? extends O> function) {
+        return fuse(input, new FusedTransformFuture<O>(input, function, null));
+    }
+
+    static <V, X extends Throwable> FluentFuture<V> create(
+            ListenableFuture<? extends V> input,
+            Class<X> exceptionType,
+            Function<? super X, ? extends V> fallback) {
+        return fuse(input, new FusedTransformFuture<V>(input, fallback, checkNotNull(exceptionType)));
+    }
+
+    private static <O> FluentFuture<O> fuse(ListenableFuture<?> input, FusedTransformFuture<O> output) {
+        if(input instanceof FusedTransformFuture
+                && SUCCESSOR.compareAndSet((FusedTransformFuture<?>) input, null, output)) {
+            return output;
+        }
+        input.addListener(output, directExecutor());
+        return output;
+    }
+
+    private ListenableFuture<?> inputFuture;
+    private Function<Object, Object> function;
+    private Class<? extends Throwable> exceptionType;
+    private volatile FusedTransformFuture<?> successor;
+
+    private FusedTransformFuture() {}
+
+    @SuppressWarnings("unchecked")
+    private FusedTransformFuture(
+            ListenableFuture<?> inputFuture,
+            Function<?, ?> function,
+            Class<? extends Throwable> exceptionType) {
+        this.inputFuture = checkNotNull(inputFuture);
+        this.function = (Function<Object, Object>) checkNotNull(function);
+        this.exceptionType = exceptionType;
+    }
+
+    @Override
+    public void run() {
+        ListenableFuture<?> localInputFuture = inputFuture;
+        if(localInputFuture == null | isCancelled()) {
+            return ;
+        }
+        Object value = null;
+        Throwable thrown = null;
+        boolean cancelled = false;
+        try {
+            value = getDone(localInputFuture);
+        } catch (CancellationException e) {
+            cancelled = true;
+        } catch (ExecutionException e) {
+            thrown = e.getCause();
+        } catch (RuntimeException | Error e) {
+            thrown = e;
+        }
+        runChain(this, value, thrown, cancelled);
+    }
+
+    // 每一级都先取走successor再完成自己，这样afterDone里不会再去跑同一个successor，整条链不会递归。
+    @SuppressWarnings("unchecked")
+    private static void runChain(FusedTransformFuture<?> stage, Object value, Throwable thrown, boolean cancelled) {
+        while(stage != null) {
+            FusedTransformFuture<Object> current = (FusedTransformFuture<Object>) stage;
+            Function<Object, Object> localFunction = current.function;
+            Class<? extends Throwable> localExceptionType = current.exceptionType;
+            current.inputFuture = null;
+            current.function = null;
+            current.exceptionType = null;
+            stage = current.takeSuccessor();
+
+            boolean completed = false;
+            if(localFunction != null) {
+                if(localExceptionType == null) {
+                    if(!cancelled & thrown == null) {
+                        try {
+                            value = localFunction.apply(value);
+                        } catch (Throwable t) {
+                            value = null;
+                            thrown = t;
+                        }
+                    }
+                } else if(cancelled | thrown != null) {
+                    Throwable cause = cancelled ? new CancellationException("Task was cancelled.") : thrown;
+                    cancelled = false;
+                    thrown = cause;
+                    if(isInstanceOfThrowableClass(cause, localExceptionType)) {
+                        try {
+                            value = localFunction.apply(cause);
+                            thrown = null;
+                        } catch (Throwable t) {
+                            thrown = t;
+                        }
+                    }
+                }
+                completed = cancelled
+                        ? current.cancel(false)
+                        : thrown != null ? current.setException(thrown) : current.set(value);
+            }
+            if(!completed) {
+                // 只有cancel会从外面完成这一级
+                value = null;
+                thrown = null;
+                cancelled = true;
+            }
+        }
+    }
+
+    private FusedTransformFuture<?> takeSuccessor() {
+        FusedTransformFuture<?> next = (FusedTransformFuture<?>) SUCCESSOR.getAndSet(this, TOMBSTONE);
+        return next == TOMBSTONE ? null : next;
+    }
+
+    @Override
+    protected void afterDone() {
+        maybePropagateCancellationTo(inputFuture);
+        this.inputFuture = null;
+        this.function = null;
+        this.exceptionType = null;
+        if(isCancelled()) {
+            FusedTransformFuture<?> localSuccessor = takeSuccessor();
+            if(localSuccessor != null) {
+                runChain(localSuccessor, null, null, true);
+            }
+        }
+    }
+
+    @Override
+    protected String pendingToString() {
+        ListenableFuture<?> localInputFuture = inputFuture;
+        Function<Object, Object> localFunction = function;
+        Class<? extends Throwable> localExceptionType = exceptionType;
+        String superString = super.pendingToString();
+        String resultString = "";
+        if(localInputFuture != null) {
+            resultString = "inputFuture=[" + localInputFuture + "], ";
+        }
+        if(localFunction != null) {
+            if(localExceptionType != null) {
+                return resultString
+                        + "exceptionType=["
+                        + localExceptionType
+                        + "], fallback=["
+                        + localFunction
+                        + "]";
+            }
+            return resultString + "function=[" + localFunction + "]";
+        } else if(superString != null) {
+            return resultString + superString;
+        }
+        return null;
+    }
+}
@@ -1,17 +1,114 @@
 package com.zz4955.concurrent;
 
 import com.google.common.collect.ImmutableList;
+import com.zz4955.concurrent.ImmediateFuture.ImmediateCancelledFuture;
+import com.zz4955.concurrent.ImmediateFuture.ImmediateFailedFuture;
+import com.zz4955.concurrent.ImmediateFuture.ImmediateSuccessfulFuture;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
+import static com.zz4955.concurrent.MoreExecutors.directExecutor;
 import static com.zz4955.concurrent.Tools.checkNotNull;
 import static com.zz4955.concurrent.Tools.checkState;
 import static com.zz4955.concurrent.Uninterruptibles.getUninterruptibly;
 
 public final class Futures {
 
+    public static <V> ListenableFuture<V> immediateFuture(V value) {
+        if(value == null) {
+            @SuppressWarnings("unchecked")
+            ListenableFuture<V> typedNull = (ListenableFuture<V>) ImmediateSuccessfulFuture.NULL;
+            return typedNull;
+        }
+        return new ImmediateSuccessfulFuture<V>(value);
+    }
+
+    public static <V> ListenableFuture<V> immediateFailedFuture(Throwable throwable) {
+        checkNotNull(throwable);
+        return new ImmediateFailedFuture<V>(throwable);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> ListenableFuture<V> immediateCancelledFuture() {
+        return (ListenableFuture<V>) ImmediateCancelledFuture.INSTANCE;
+    }
+
+    // 返回的future随stage完成；stage本身是Future时（比如CompletableFuture），取消返回的future会取消stage
+    public static <V> ListenableFuture<V> fromCompletionStage(CompletionStage<V> stage) {
+        return CompletableFutureBridge.fromCompletionStage(stage);
+    }
+
+    // 任务本身就是返回的future，callable返回的future通过setFuture接上，中间没有别的future
+    public static <O> ListenableFuture<O> submitAsync(AsyncCallable<O> callable, Executor executor) {
+        TrustedListenableFutureTask<O> task = TrustedListenableFutureTask.create(callable);
+        executor.execute(task);
+        return task;
+    }
+
+    public static <O> ListenableFuture<O> scheduleAsync(
+            AsyncCallable<O> callable,
+            long delay,
+            TimeUnit timeUnit,
+            ScheduledExecutorService executorService) {
+        TrustedListenableFutureTask<O> task = TrustedListenableFutureTask.create(callable);
+        final Future<?> scheduled = executorService.schedule(task, delay, timeUnit);
+        task.addListener(new Runnable() {
+            @Override
+            public void run() {
+                // 返回的future先完成（比如被取消）时，不再让任务留在调度队列里
+                scheduled.cancel(false);
+            }
+        }, directExecutor());
+        return task;
+    }
+
+    // 输入完成时返回的future跟着完成，但取消返回的future不会取消输入
+    public static <V> ListenableFuture<V> nonCancellationPropagating(ListenableFuture<V> future) {
+        if(future.isDone()) {
+            return future;
+        }
+        NonCancellationPropagatingFuture<V> output = new NonCancellationPropagatingFuture<>(future);
+        future.addListener(output, directExecutor());
+        return output;
+    }
+
+    private static final class NonCancellationPropagatingFuture<V> extends AbstractFuture.TrustedFuture<V>
+            implements Runnable {
+
+        private ListenableFuture<V> delegate;
+
+        NonCancellationPropagatingFuture(ListenableFuture<V> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void run() {
+            // 输入已经完成，setFuture直接取它的结果，不会挂SetFuture
+            ListenableFuture<V> localDelegate = delegate;
+            if(localDelegate != null) {
+                setFuture(localDelegate);
+            }
+        }
+
+        @Override
+        protected void afterDone() {
+            delegate = null;
+        }
+
+        @Override
+        protected String pendingToString() {
+            ListenableFuture<V> localDelegate = delegate;
+            if(localDelegate != null) {
+                return "delegate=[" + localDelegate + "]";
+            }
+            return null;
+        }
+    }
+
     public static <V> V getDone(Future<V> future) throws ExecutionException {
         checkState(future.isDone(), "Future was expected to be done: %s", future);
         return getUninterruptibly(future);
@@ -41,6 +138,33 @@ public final class Futures {
         return TimeoutFuture.create(delegate, time, unit, scheduledExecutor);
     }
 
+    public static <V> ListenableFuture<V> withTimeout(
+            ListenableFuture<V> delegate,
+            long time,
+            TimeUnit unit,
+            TimerWheel timerWheel) {
+        return TimeoutFuture.create(delegate, time, unit, timerWheel);
+    }
+
+    // stacklessTimeout覆盖concurrent.stackless_exceptions的全局设置，调试时可以让某个调用点的超时异常带上完整的栈和delegate信息
+    public static <V> ListenableFuture<V> withTimeout(
+            ListenableFuture<V> delegate,
+            long time,
+            TimeUnit unit,
+            ScheduledExecutorService scheduledExecutor,
+            boolean stacklessTimeout) {
+        return TimeoutFuture.create(delegate, time, unit, scheduledExecutor, stacklessTimeout);
+    }
+
+    public static <V> ListenableFuture<V> withTimeout(
+            ListenableFuture<V> delegate,
+            long time,
+            TimeUnit unit,
+            TimerWheel timerWheel,
+            boolean stacklessTimeout) {
+        return TimeoutFuture.create(delegate, time, unit, timerWheel, stacklessTimeout);
+    }
+
     public static <I, O> ListenableFuture<O> transform(
             ListenableFuture<I> input,
             Function<? super I, ? extends O> function,
@@ -55,6 +179,49 @@ public final class Futures {
         return AbstractTransformFuture.create(input, function, executor);
     }
 
+    // 不注册listener，每次get()都在调用线程上对输入的结果重新调用一次function，适合只读几次的简单投影
+    public static <I, O> Future<O> lazyTransform(
+            final Future<I> input,
+            final Function<? super I, ? extends O> function) {
+        checkNotNull(input);
+        checkNotNull(function);
+        return new Future<O>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                return input.cancel(mayInterruptIfRunning);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return input.isCancelled();
+            }
+
+            @Override
+            public boolean isDone() {
+                return input.isDone();
+            }
+
+            @Override
+            public O get() throws InterruptedException, ExecutionException {
+                return applyTransformation(input.get());
+            }
+
+            @Override
+            public O get(long timeout, TimeUnit unit)
+                    throws InterruptedException, ExecutionException, TimeoutException {
+                return applyTransformation(input.get(timeout, unit));
+            }
+
+            private O applyTransformation(I value) throws ExecutionException {
+                try {
+                    return function.apply(value);
+                } catch (Throwable t) {
+                    throw new ExecutionException(t);
+                }
+            }
+        };
+    }
+
     public static <V> void addCallback(
             final ListenableFuture<V> future,
             final FutureCallback<? super V> callback,
@@ -95,11 +262,241 @@ public final class Futures {
     }
 
     public static <V> ListenableFuture<List<V>> allAsList(ListenableFuture<? extends V>... futures) {
-        return new CollectionFuture.ListFuture<V>(ImmutableList.copyOf(futures), true);
+        return allAsList(ImmutableList.copyOf(futures));
     }
 
     public static <V> ListenableFuture<List<V>> allAsList(Iterable<? extends ListenableFuture<? extends V>> futures) {
-        return new CollectionFuture.ListFuture<V>(ImmutableList.copyOf(futures), true);
+        ImmutableList<ListenableFuture<? extends V>> copy = ImmutableList.copyOf(futures);
+        if(allDone(copy)) {
+            return immediateAllAsList(copy);
+        }
+        return new CollectionFuture.ListFuture<V>(copy, true);
+    }
+
+    @SafeVarargs
+    public static ListenableFuture<int[]> allAsIntArray(ListenableFuture<? extends Integer>... futures) {
+        return allAsIntArray(ImmutableList.copyOf(futures));
+    }
+
+    public static ListenableFuture<int[]> allAsIntArray(Iterable<? extends ListenableFuture<? extends Integer>> futures) {
+        return new PrimitiveArrayFuture.IntArrayFuture(ImmutableList.copyOf(futures));
+    }
+
+    @SafeVarargs
+    public static ListenableFuture<long[]> allAsLongArray(ListenableFuture<? extends Long>... futures) {
+        return allAsLongArray(ImmutableList.copyOf(futures));
+    }
+
+    public static ListenableFuture<long[]> allAsLongArray(Iterable<? extends ListenableFuture<? extends Long>> futures) {
+        return new PrimitiveArrayFuture.LongArrayFuture(ImmutableList.copyOf(futures));
+    }
+
+    @SafeVarargs
+    public static ListenableFuture<double[]> allAsDoubleArray(ListenableFuture<? extends Double>... futures) {
+        return allAsDoubleArray(ImmutableList.copyOf(futures));
+    }
+
+    public static ListenableFuture<double[]> allAsDoubleArray(
+            Iterable<? extends ListenableFuture<? extends Double>> futures) {
+        return new PrimitiveArrayFuture.DoubleArrayFuture(ImmutableList.copyOf(futures));
+    }
+
+    @SafeVarargs
+    public static <V> ListenableFuture<List<V>> successfulAsList(ListenableFuture<? extends V>... futures) {
+        return new CollectionFuture.ListFuture<V>(ImmutableList.copyOf(futures), false);
+    }
+
+    public static <V> ListenableFuture<List<V>> successfulAsList(
+            Iterable<? extends ListenableFuture<? extends V>> futures) {
+        return new CollectionFuture.ListFuture<V>(ImmutableList.copyOf(futures), false);
+    }
+
+    @SafeVarargs
+    public static <V> FutureCombiner<V> whenAllComplete(ListenableFuture<? extends V>... futures) {
+        return new FutureCombiner<V>(false, ImmutableList.copyOf(futures));
+    }
+
+    public static <V> FutureCombiner<V> whenAllComplete(Iterable<? extends ListenableFuture<? extends V>> futures) {
+        return new FutureCombiner<V>(false, ImmutableList.copyOf(futures));
+    }
+
+    @SafeVarargs
+    public static <V> FutureCombiner<V> whenAllSucceed(ListenableFuture<? extends V>... futures) {
+        return new FutureCombiner<V>(true, ImmutableList.copyOf(futures));
+    }
+
+    public static <V> FutureCombiner<V> whenAllSucceed(Iterable<? extends ListenableFuture<? extends V>> futures) {
+        return new FutureCombiner<V>(true, ImmutableList.copyOf(futures));
+    }
+
+    public static final class FutureCombiner<V> {
+        private final boolean allMustSucceed;
+        private final ImmutableList<ListenableFuture<? extends V>> futures;
+
+        private FutureCombiner(boolean allMustSucceed, ImmutableList<ListenableFuture<? extends V>> futures) {
+            this.allMustSucceed = allMustSucceed;
+            this.futures = futures;
+        }
+
+        public <C> ListenableFuture<C> callAsync(AsyncCallable<C> combiner, Executor executor) {
+            return new CombinedFuture<C>(futures, allMustSucceed, executor, combiner);
+        }
+
+        public <C> ListenableFuture<C> call(Callable<C> combiner, Executor executor) {
+            return new CombinedFuture<C>(futures, allMustSucceed, executor, combiner);
+        }
+
+        public ListenableFuture<?> run(final Runnable combiner, Executor executor) {
+            checkNotNull(combiner);
+            return call(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    combiner.run();
+                    return null;
+                }
+            }, executor);
+        }
+    }
+
+    private static boolean allDone(ImmutableList<? extends ListenableFuture<?>> futures) {
+        for(ListenableFuture<?> future : futures) {
+            if(!future.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 所有输入都已经完成时直接按顺序算出结果，和ListFuture一样以遇到的第一个取消或失败为准。
+    private static <V> ListenableFuture<List<V>> immediateAllAsList(
+            ImmutableList<ListenableFuture<? extends V>> futures) {
+        Object[] result = new Object[futures.size()];
+        int i = 0;
+        for(ListenableFuture<? extends V> future : futures) {
+            if(future.isCancelled()) {
+                return immediateCancelledFuture();
+            }
+            try {
+                result[i ++] = getDone(future);
+            } catch (ExecutionException e) {
+                return immediateFailedFuture(e.getCause());
+            } catch (RuntimeException | Error e) {
+                return immediateFailedFuture(e);
+            }
+        }
+        return immediateFuture(new CollectionFuture.ArrayView<V>(result));
+    }
+
+    // 返回的第i个future以第i个完成的输入为结果；只有所有输出都完成且其中有被取消的，才去取消剩下的输入。
+    public static <T> ImmutableList<ListenableFuture<T>> inCompletionOrder(
+            Iterable<? extends ListenableFuture<? extends T>> futures) {
+        Collection<? extends ListenableFuture<? extends T>> collection = futures instanceof Collection
+                ? (Collection<? extends ListenableFuture<? extends T>>) futures
+                : ImmutableList.copyOf(futures);
+        @SuppressWarnings("unchecked")
+        ListenableFuture<? extends T>[] copy = collection.toArray(new ListenableFuture[collection.size()]);
+        final InCompletionOrderState<T> state = new InCompletionOrderState<>(copy);
+        ImmutableList.Builder<AbstractFuture<T>> delegatesBuilder = ImmutableList.builder();
+        for(int i = 0; i < copy.length; i ++) {
+            delegatesBuilder.add(new InCompletionOrderFuture<T>(state));
+        }
+
+        final ImmutableList<AbstractFuture<T>> delegates = delegatesBuilder.build();
+        for(int i = 0; i < copy.length; i ++) {
+            final int localI = i;
+            copy[i].addListener(new Runnable() {
+                @Override
+                public void run() {
+                    state.recordInputCompletion(delegates, localI);
+                }
+            }, directExecutor());
+        }
+
+        @SuppressWarnings("unchecked")
+        ImmutableList<ListenableFuture<T>> delegatesCast = (ImmutableList) delegates;
+        return delegatesCast;
+    }
+
+    private static final class InCompletionOrderFuture<T> extends AbstractFuture<T> {
+
+        private InCompletionOrderState<T> state;
+
+        private InCompletionOrderFuture(InCompletionOrderState<T> state) {
+            this.state = state;
+        }
+
+        @Override
+        public boolean cancel(boolean interruptIfRunning) {
+            InCompletionOrderState<T> localState = state;
+            if(super.cancel(interruptIfRunning)) {
+                localState.recordOutputCancellation(interruptIfRunning);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        protected void afterDone() {
+            state = null;
+        }
+
+        @Override
+        protected String pendingToString() {
+            InCompletionOrderState<T> localState = state;
+            if(localState != null) {
+                return "inputCount=["
+                        + localState.inputFutures.length
+                        + "], remaining=["
+                        + localState.incompleteOutputCount.get()
+                        + "]";
+            }
+            return null;
+        }
+    }
+
+    private static final class InCompletionOrderState<T> {
+        private boolean wasCancelled = false;
+        private boolean shouldInterrupt = true;
+        private final AtomicInteger incompleteOutputCount;
+        private final ListenableFuture<? extends T>[] inputFutures;
+        // 只是一个起点提示，真正决定输出位置的是setFuture的CAS，所以这里不需要原子更新。
+        private volatile int delegateIndex = 0;
+
+        private InCompletionOrderState(ListenableFuture<? extends T>[] inputFutures) {
+            this.inputFutures = inputFutures;
+            incompleteOutputCount = new AtomicInteger(inputFutures.length);
+        }
+
+        private void recordOutputCancellation(boolean interruptIfRunning) {
+            wasCancelled = true;
+            if(!interruptIfRunning) {
+                shouldInterrupt = false;
+            }
+            recordCompletion();
+        }
+
+        private void recordInputCompletion(ImmutableList<AbstractFuture<T>> delegates, int inputFutureIndex) {
+            ListenableFuture<? extends T> inputFuture = inputFutures[inputFutureIndex];
+            inputFutures[inputFutureIndex] = null;
+            for(int i = delegateIndex; i < delegates.size(); i ++) {
+                if(delegates.get(i).setFuture(inputFuture)) {
+                    recordCompletion();
+                    delegateIndex = i + 1;
+                    return ;
+                }
+            }
+            delegateIndex = delegates.size();
+        }
+
+        private void recordCompletion() {
+            if(incompleteOutputCount.decrementAndGet() == 0 && wasCancelled) {
+                for(ListenableFuture<?> toCancel : inputFutures) {
+                    if(toCancel != null) {
+                        toCancel.cancel(shouldInterrupt);
+                    }
+                }
+            }
+        }
     }
 
     public static <V, X extends Exception> V getChecked(Future<V> future, Class<X> exceptionClass) throws X {
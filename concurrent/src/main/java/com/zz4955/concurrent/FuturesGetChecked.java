@@ -3,13 +3,22 @@ package com.zz4955.concurrent;
 import com.google.common.base.Function;
 import com.google.common.collect.Ordering;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static com.zz4955.concurrent.Tools.checkArgument;
 
@@ -23,8 +32,8 @@ final class FuturesGetChecked {
         return GetCheckedTypeValidatorHolder.BEST_VALIDATOR;
     }
 
-    static GetCheckedTypeValidator weakSetValidator() {
-        return GetCheckedTypeValidatorHolder.WeakSetValidator.INSTANCE;
+    static GetCheckedTypeValidator weakMapValidator() {
+        return GetCheckedTypeValidatorHolder.WeakMapValidator.INSTANCE;
     }
 
     static GetCheckedTypeValidator classValueValidator() {
@@ -37,36 +46,38 @@ final class FuturesGetChecked {
             return future.get();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            throw newWithCause(exceptionClass, e);
+            throw validator.newWithCause(exceptionClass, e);
         } catch (ExecutionException e) {
-            wrapAndThrowExceptionOrError(e.getCause(), exceptionClass);
+            wrapAndThrowExceptionOrError(validator, e.getCause(), exceptionClass);
             throw new AssertionError();
         }
     }
 
     static <V, X extends Exception> V getChecked(Future<V> future, Class<X> exceptionClass, long timeout, TimeUnit unit) throws X {
-        bestGetCheckedTypeValidator().validateClass(exceptionClass);
+        GetCheckedTypeValidator validator = bestGetCheckedTypeValidator();
+        validator.validateClass(exceptionClass);
         try {
             return future.get(timeout, unit);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            throw newWithCause(exceptionClass, e);
+            throw validator.newWithCause(exceptionClass, e);
         } catch (TimeoutException e) {
-            throw newWithCause(exceptionClass, e);
+            throw validator.newWithCause(exceptionClass, e);
         } catch (ExecutionException e) {
-            wrapAndThrowExceptionOrError(e.getCause(), exceptionClass);
+            wrapAndThrowExceptionOrError(validator, e.getCause(), exceptionClass);
             throw new AssertionError();
         }
     }
 
-    private static <X extends Exception> void wrapAndThrowExceptionOrError(Throwable cause, Class<X> exceptionClass) throws X {
+    private static <X extends Exception> void wrapAndThrowExceptionOrError(
+            GetCheckedTypeValidator validator, Throwable cause, Class<X> exceptionClass) throws X {
         if(cause instanceof Error) {
             throw new ExecutionError((Error) cause);
         }
         if(cause instanceof RuntimeException) {
             throw new UncheckedExecutionException(cause);
         }
-        throw newWithCause(exceptionClass, cause);
+        throw validator.newWithCause(exceptionClass, cause);
     }
 
     static boolean isCheckedException(Class<? extends Exception> type) {
@@ -82,7 +93,7 @@ final class FuturesGetChecked {
         }
     }
 
-    private static <X extends Exception> X newWithCause(Class<X> exceptionClass, Throwable cause) {
+    static <X extends Exception> X newWithCause(Class<X> exceptionClass, Throwable cause) {
         List<Constructor<X>> constructors = (List) Arrays.asList(exceptionClass.getConstructors());
         for(Constructor<X> constructor : preferringStrings(constructors)) {
             X instance = newFromConstructor(constructor, cause);
@@ -124,6 +135,60 @@ final class FuturesGetChecked {
         }
     }
 
+    private static final MethodHandle SLOW_NEW_WITH_CAUSE;
+    private static final MethodHandle TO_STRING;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            SLOW_NEW_WITH_CAUSE = lookup.findStatic(FuturesGetChecked.class, "newWithCause",
+                    MethodType.methodType(Exception.class, Class.class, Throwable.class));
+            TO_STRING = lookup.findVirtual(Object.class, "toString", MethodType.methodType(String.class))
+                    .asType(MethodType.methodType(String.class, Throwable.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * 按newWithCause的顺序选出构造函数，做成类型为(Throwable)Exception的MethodHandle：String参数传cause.toString()，Throwable参数传cause。
+     * 没有能直接调用的构造函数时退回到反射的newWithCause。
+     */
+    static MethodHandle newWithCauseHandle(Class<? extends Exception> exceptionClass) {
+        List<Constructor<Exception>> constructors = (List) Arrays.asList(exceptionClass.getConstructors());
+        for(Constructor<Exception> constructor : preferringStrings(constructors)) {
+            MethodHandle handle = constructorHandle(constructor);
+            if(handle != null) {
+                return handle;
+            }
+        }
+        return MethodHandles.insertArguments(SLOW_NEW_WITH_CAUSE, 0, exceptionClass);
+    }
+
+    private static MethodHandle constructorHandle(Constructor<?> constructor) {
+        Class<?>[] paramTypes = constructor.getParameterTypes();
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().unreflectConstructor(constructor);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+        MethodHandle[] filters = new MethodHandle[paramTypes.length];
+        for(int i = 0; i < paramTypes.length; i ++) {
+            Class<?> paramType = paramTypes[i];
+            if(paramType.equals(String.class)) {
+                filters[i] = TO_STRING;
+            } else if(!paramType.equals(Throwable.class)) {
+                return null;
+            }
+        }
+        MethodType factoryType = MethodType.methodType(Exception.class, Throwable.class);
+        handle = MethodHandles.filterArguments(handle, 0, filters);
+        handle = handle.asType(handle.type().changeReturnType(Exception.class));
+        // 所有参数都来自同一个cause
+        return MethodHandles.permuteArguments(handle, factoryType, new int[paramTypes.length]);
+    }
+
     private static <X extends Exception> List<Constructor<X>> preferringStrings(List<Constructor<X>> constructors) {
         return WITH_STRING_PARAM_FIRST.sortedCopy(constructors);
     }
@@ -152,6 +217,9 @@ final class FuturesGetChecked {
 
     interface GetCheckedTypeValidator {
         void validateClass(Class<? extends Exception> exceptionClass);
+
+        // exceptionClass必须已经validateClass过
+        <X extends Exception> X newWithCause(Class<X> exceptionClass, Throwable cause);
     }
 
     static class GetCheckedTypeValidatorHolder {
@@ -162,38 +230,164 @@ final class FuturesGetChecked {
         enum ClassValueValidator implements GetCheckedTypeValidator {
             INSTANCE;
 
-            private static final ClassValue<Boolean> isValidClass = new ClassValue<Boolean>() {
+            // 校验通过的类才会有值，值就是这个类的newWithCause工厂
+            private static final ClassValue<MethodHandle> newWithCauseHandles = new ClassValue<MethodHandle>() {
                 @Override
-                protected Boolean computeValue(Class<?> type) {
-                    checkExceptionClassValidity(type.asSubclass(Exception.class));
-                    return true;
+                protected MethodHandle computeValue(Class<?> type) {
+                    Class<? extends Exception> exceptionClass = type.asSubclass(Exception.class);
+                    checkExceptionClassValidity(exceptionClass);
+                    return newWithCauseHandle(exceptionClass);
                 }
             };
 
             @Override
             public void validateClass(Class<? extends Exception> exceptionClass) {
-                isValidClass.get(exceptionClass);
+                newWithCauseHandles.get(exceptionClass);
+            }
+
+            @Override
+            public <X extends Exception> X newWithCause(Class<X> exceptionClass, Throwable cause) {
+                Exception instance;
+                try {
+                    instance = (Exception) newWithCauseHandles.get(exceptionClass).invokeExact(cause);
+                } catch (Throwable t) {
+                    // 选中的构造函数自己抛了异常，按原来的方式一个一个试
+                    return FuturesGetChecked.newWithCause(exceptionClass, cause);
+                }
+                if(instance.getCause() == null) {
+                    instance.initCause(cause);
+                }
+                return exceptionClass.cast(instance);
             }
         }
 
-        enum WeakSetValidator implements GetCheckedTypeValidator {
+        /**
+         * 用弱引用的Class做key、按identity比较的ConcurrentHashMap记住校验通过的类，查找是O(1)且不加锁。
+         * 超过MAX_SIZE时淘汰最久没有用到的一批；“用到的时间”按插入次数计，命中时只在值变了才写，读多时不会互相抢缓存行。
+         */
+        enum WeakMapValidator implements GetCheckedTypeValidator {
             INSTANCE;
 
-            private static final Set<WeakReference<Class<? extends Exception>>> validClasses = new CopyOnWriteArraySet<>();
+            private static final int MAX_SIZE = 1000;
+            private static final int EVICTION_BATCH = MAX_SIZE / 8;
+
+            private static final ConcurrentHashMap<Object, Stamp> validClasses = new ConcurrentHashMap<>();
+            private static final ReferenceQueue<Class<?>> staleKeys = new ReferenceQueue<>();
+            private static final AtomicLong clock = new AtomicLong();
+            private static final ReentrantLock evictionLock = new ReentrantLock();
 
             @Override
             public void validateClass(Class<? extends Exception> exceptionClass) {
-                for(WeakReference<Class<? extends Exception>> knownGood : validClasses) {
-                    if(exceptionClass.equals(knownGood.get())) {
-                        return ;
+                Stamp stamp = validClasses.get(new LookupKey(exceptionClass));
+                if(stamp != null) {
+                    long now = clock.get();
+                    if(stamp.lastAccess != now) {
+                        stamp.lastAccess = now;
                     }
+                    return ;
                 }
                 checkExceptionClassValidity(exceptionClass);
-                if(validClasses.size() > 1000) {
-                    validClasses.clear();
+                expungeStaleKeys();
+                validClasses.putIfAbsent(new WeakKey(exceptionClass, staleKeys), new Stamp(clock.incrementAndGet()));
+                if(validClasses.size() > MAX_SIZE) {
+                    evict();
                 }
+            }
+
+            @Override
+            public <X extends Exception> X newWithCause(Class<X> exceptionClass, Throwable cause) {
+                return FuturesGetChecked.newWithCause(exceptionClass, cause);
+            }
 
-                validClasses.add(new WeakReference<>(exceptionClass));
+            private static void expungeStaleKeys() {
+                Reference<?> stale;
+                while((stale = staleKeys.poll()) != null) {
+                    validClasses.remove(stale);
+                }
+            }
+
+            // 同一时刻只有一个线程淘汰，其他线程不等
+            private static void evict() {
+                if(!evictionLock.tryLock()) {
+                    return ;
+                }
+                try {
+                    int excess = validClasses.size() - MAX_SIZE;
+                    if(excess <= 0) {
+                        return ;
+                    }
+                    List<Map.Entry<Object, Stamp>> entries = new ArrayList<>(validClasses.entrySet());
+                    entries.sort(new Comparator<Map.Entry<Object, Stamp>>() {
+                        @Override
+                        public int compare(Map.Entry<Object, Stamp> a, Map.Entry<Object, Stamp> b) {
+                            return Long.compare(a.getValue().lastAccess, b.getValue().lastAccess);
+                        }
+                    });
+                    int toRemove = Math.min(entries.size(), excess + EVICTION_BATCH);
+                    for(int i = 0; i < toRemove; i ++) {
+                        Map.Entry<Object, Stamp> entry = entries.get(i);
+                        validClasses.remove(entry.getKey(), entry.getValue());
+                    }
+                } finally {
+                    evictionLock.unlock();
+                }
+            }
+
+            private static final class Stamp {
+                volatile long lastAccess;
+
+                Stamp(long lastAccess) {
+                    this.lastAccess = lastAccess;
+                }
+            }
+
+            // 存在map里的key；被回收之后只和自己相等，这样还能从map里删掉
+            private static final class WeakKey extends WeakReference<Class<?>> {
+                private final int hash;
+
+                WeakKey(Class<?> type, ReferenceQueue<Class<?>> queue) {
+                    super(type, queue);
+                    this.hash = System.identityHashCode(type);
+                }
+
+                @Override
+                public int hashCode() {
+                    return hash;
+                }
+
+                @Override
+                public boolean equals(Object o) {
+                    if(o == this) {
+                        return true;
+                    }
+                    Class<?> type = get();
+                    if(type == null) {
+                        return false;
+                    }
+                    if(o instanceof WeakKey) {
+                        return ((WeakKey) o).get() == type;
+                    }
+                    return o instanceof LookupKey && ((LookupKey) o).type == type;
+                }
+            }
+
+            // 查找时用的强引用key，不用每次都创建WeakReference
+            private static final class LookupKey {
+                private final Class<?> type;
+
+                LookupKey(Class<?> type) {
+                    this.type = type;
+                }
+
+                @Override
+                public int hashCode() {
+                    return System.identityHashCode(type);
+                }
+
+                @Override
+                public boolean equals(Object o) {
+                    return o instanceof WeakKey && ((WeakKey) o).get() == type;
+                }
             }
         }
 
@@ -202,7 +396,7 @@ final class FuturesGetChecked {
                 Class<?> theClass = Class.forName(CLASS_VALUE_VALIDATOR_NAME);
                 return (GetCheckedTypeValidator) theClass.getEnumConstants()[0];
             } catch (Throwable t) {
-                return weakSetValidator();
+                return weakMapValidator();
             }
         }
     }
@@ -0,0 +1,88 @@
+package com.zz4955.concurrent;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.zz4955.concurrent.Tools.checkNotNull;
+
+abstract class ImmediateFuture<V> extends FluentFuture<V> {
+
+    private static final Logger log = Logger.getLogger(ImmediateFuture.class.getName());
+
+    @Override
+    public void addListener(Runnable listener, Executor executor) {
+        checkNotNull(listener, "Runnable was null.");
+        checkNotNull(executor, "Executor was null.");
+        try {
+            executor.execute(listener);
+        } catch (RuntimeException e) {
+            log.log(
+                    Level.SEVERE,
+                    "RuntimeException while executing runnable " + listener + " with executor " + executor,
+                    e
+            );
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public abstract V get() throws ExecutionException;
+
+    @Override
+    public V get(long timeout, TimeUnit unit) throws ExecutionException {
+        checkNotNull(unit);
+        return get();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return true;
+    }
+
+    static final class ImmediateSuccessfulFuture<V> extends ImmediateFuture<V> {
+        static final ImmediateSuccessfulFuture<Object> NULL = new ImmediateSuccessfulFuture<>(null);
+
+        private final V value;
+
+        ImmediateSuccessfulFuture(V value) {
+            this.value = value;
+        }
+
+        @Override
+        public V get() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return super.toString() + "[status=SUCCESS, result=[" + value + "]]";
+        }
+    }
+
+    // 失败和取消的情况直接用TrustedFuture，setFuture/getFutureValue可以直接读value，不用走get()抛异常。
+    static final class ImmediateFailedFuture<V> extends AbstractFuture.TrustedFuture<V> {
+        ImmediateFailedFuture(Throwable thrown) {
+            setException(thrown);
+        }
+    }
+
+    static final class ImmediateCancelledFuture<V> extends AbstractFuture.TrustedFuture<V> {
+        static final ImmediateCancelledFuture<Object> INSTANCE = new ImmediateCancelledFuture<>();
+
+        private ImmediateCancelledFuture() {
+            cancel(false);
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.zz4955.concurrent;
+
+import java.util.concurrent.ScheduledFuture;
+
+public interface ListenableScheduledFuture<V> extends ScheduledFuture<V>, ListenableFuture<V> {
+}
@@ -1,9 +1,19 @@
 package com.zz4955.concurrent;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static com.zz4955.concurrent.Tools.checkNotNull;
 
@@ -13,12 +23,32 @@ public final class MoreExecutors {
         return DirectExecutor.INSTANCE;
     }
 
+    // 任务是交给delegate.execute的，虚拟线程的ThreadPerTaskExecutor也一样：每个任务直接起一个虚拟线程，不会再套一层FutureTask
     public static ListeningExecutorService listeningDecorator(ExecutorService delegate) {
         return (delegate instanceof ListeningExecutorService)
                 ? (ListeningExecutorService) delegate
                 : new ListeningDecorator(delegate);
     }
 
+    public static ListeningScheduledExecutorService listeningDecorator(ScheduledExecutorService delegate) {
+        return (delegate instanceof ListeningScheduledExecutorService)
+                ? (ListeningScheduledExecutorService) delegate
+                : new ScheduledListeningDecorator(delegate);
+    }
+
+    /**
+     * 每个任务一个虚拟线程（JDK 21+），任务包装成TrustedListenableFutureTask，取消时照样能中断任务所在的虚拟线程。
+     * 任务里阻塞在AbstractFuture.get()上时是通过LockSupport.park挂起的，只会卸载虚拟线程，不会占住carrier线程。
+     */
+    public static ListeningExecutorService newVirtualThreadListeningExecutor() {
+        return new ListeningDecorator(VirtualThreads.newVirtualThreadPerTaskExecutor());
+    }
+
+    // 返回的Executor按提交顺序一个一个地执行任务，不会在delegate上同时占用多个线程
+    public static Executor newSequentialExecutor(Executor delegate) {
+        return new SequentialExecutor(delegate);
+    }
+
     private static class ListeningDecorator extends AbstractListeningExecutorService {
         private final ExecutorService delegate;
 
@@ -57,6 +87,166 @@ public final class MoreExecutors {
         }
     }
 
+    /**
+     * 延时任务直接把TrustedListenableFutureTask交给delegate调度；周期任务整个调度期间只用一个future，
+     * 它只会因为任务抛异常或被取消而完成。
+     */
+    private static final class ScheduledListeningDecorator extends ListeningDecorator
+            implements ListeningScheduledExecutorService {
+        private final ScheduledExecutorService delegate;
+
+        ScheduledListeningDecorator(ScheduledExecutorService delegate) {
+            super(delegate);
+            this.delegate = checkNotNull(delegate);
+        }
+
+        @Override
+        public ListenableScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            TrustedListenableFutureTask<Void> task = TrustedListenableFutureTask.create(command, null);
+            ScheduledFuture<?> scheduled = delegate.schedule(task, delay, unit);
+            return new ListenableScheduledTask<Void>(task, scheduled);
+        }
+
+        @Override
+        public <V> ListenableScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            TrustedListenableFutureTask<V> task = TrustedListenableFutureTask.create(callable);
+            ScheduledFuture<?> scheduled = delegate.schedule(task, delay, unit);
+            return new ListenableScheduledTask<V>(task, scheduled);
+        }
+
+        @Override
+        public ListenableScheduledFuture<?> scheduleAtFixedRate(
+                Runnable command, long initialDelay, long period, TimeUnit unit) {
+            NeverSuccessfulListenableFutureTask task = new NeverSuccessfulListenableFutureTask(command);
+            ScheduledFuture<?> scheduled = delegate.scheduleAtFixedRate(task, initialDelay, period, unit);
+            return new ListenableScheduledTask<Void>(task, scheduled);
+        }
+
+        @Override
+        public ListenableScheduledFuture<?> scheduleWithFixedDelay(
+                Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            NeverSuccessfulListenableFutureTask task = new NeverSuccessfulListenableFutureTask(command);
+            ScheduledFuture<?> scheduled = delegate.scheduleWithFixedDelay(task, initialDelay, delay, unit);
+            return new ListenableScheduledTask<Void>(task, scheduled);
+        }
+    }
+
+    // 结果和listener都来自listenableDelegate，延时和排序来自调度器返回的ScheduledFuture；取消时两个都取消
+    private static final class ListenableScheduledTask<V> implements ListenableScheduledFuture<V> {
+        private final ListenableFuture<V> listenableDelegate;
+        private final ScheduledFuture<?> scheduledDelegate;
+
+        ListenableScheduledTask(ListenableFuture<V> listenableDelegate, ScheduledFuture<?> scheduledDelegate) {
+            this.listenableDelegate = listenableDelegate;
+            this.scheduledDelegate = scheduledDelegate;
+        }
+
+        @Override
+        public void addListener(Runnable listener, Executor executor) {
+            listenableDelegate.addListener(listener, executor);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = listenableDelegate.cancel(mayInterruptIfRunning);
+            if(cancelled) {
+                scheduledDelegate.cancel(mayInterruptIfRunning);
+            }
+            return cancelled;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return listenableDelegate.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return listenableDelegate.isDone();
+        }
+
+        @Override
+        public V get() throws InterruptedException, ExecutionException {
+            return listenableDelegate.get();
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return listenableDelegate.get(timeout, unit);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return scheduledDelegate.getDelay(unit);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return scheduledDelegate.compareTo(other);
+        }
+
+        @Override
+        public String toString() {
+            return listenableDelegate.toString();
+        }
+    }
+
+    // 周期任务每次执行都跑这同一个对象；抛异常时先让future失败，再把异常抛给调度器停止后续执行
+    private static final class NeverSuccessfulListenableFutureTask extends AbstractFuture.TrustedFuture<Void>
+            implements Runnable {
+        private final Runnable delegate;
+
+        NeverSuccessfulListenableFutureTask(Runnable delegate) {
+            this.delegate = checkNotNull(delegate);
+        }
+
+        @Override
+        public void run() {
+            try {
+                delegate.run();
+            } catch (RuntimeException | Error e) {
+                setException(e);
+                throw e;
+            }
+        }
+
+        @Override
+        protected String pendingToString() {
+            return "task=[" + delegate + "]";
+        }
+    }
+
+    // 低于JDK 21时没有虚拟线程，只能通过反射去拿
+    private static final class VirtualThreads {
+        private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR;
+
+        static {
+            MethodHandle handle;
+            try {
+                handle = MethodHandles.publicLookup().findStatic(
+                        Executors.class,
+                        "newVirtualThreadPerTaskExecutor",
+                        MethodType.methodType(ExecutorService.class));
+            } catch (ReflectiveOperationException e) {
+                handle = null;
+            }
+            NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = handle;
+        }
+
+        static ExecutorService newVirtualThreadPerTaskExecutor() {
+            if(NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+                throw new UnsupportedOperationException("Virtual threads require JDK 21 or later.");
+            }
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invokeExact();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new AssertionError(t);
+            }
+        }
+    }
+
     private enum DirectExecutor implements Executor {
         INSTANCE;
 
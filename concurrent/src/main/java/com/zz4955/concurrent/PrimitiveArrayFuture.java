@@ -0,0 +1,145 @@
+package com.zz4955.concurrent;
+
+import com.google.common.collect.ImmutableCollection;
+
+import static com.zz4955.concurrent.Tools.checkNotNull;
+import static com.zz4955.concurrent.Tools.checkState;
+
+/**
+ * allAsIntArray/allAsLongArray/allAsDoubleArray：每个输入的结果按下标直接拆箱写进预先分配好的数组，完成时把这个数组本身作为结果，不再复制。
+ * 输入的结果为null时，和输入失败一样处理。
+ */
+abstract class PrimitiveArrayFuture<V, C> extends AggregateFuture<V, C> {
+
+    abstract class PrimitiveArrayRunningState extends RunningState {
+
+        PrimitiveArrayRunningState(ImmutableCollection<? extends ListenableFuture<? extends V>> futures) {
+            super(futures, true, true);
+        }
+
+        @Override
+        final void collectOneValue(boolean allMustSucceed, int index, V returnValue) {
+            checkNotNull(returnValue, "Input future completed with null");
+            if(!collectValue(index, returnValue)) {
+                checkState(allMustSucceed || isCancelled(), "Future was done before all dependencies completed");
+            }
+        }
+
+        @Override
+        final void handleAllCompleted() {
+            C localValues = takeValues();
+            if(localValues != null) {
+                set(localValues);
+            } else {
+                checkState(isDone());
+            }
+        }
+
+        @Override
+        final void releaseResourcesAfterFailure() {
+            super.releaseResourcesAfterFailure();
+            takeValues();
+        }
+
+        // 数组已经被释放时返回false
+        abstract boolean collectValue(int index, V returnValue);
+
+        abstract C takeValues();
+    }
+
+    static final class IntArrayFuture extends PrimitiveArrayFuture<Integer, int[]> {
+        IntArrayFuture(ImmutableCollection<? extends ListenableFuture<? extends Integer>> futures) {
+            init(new IntArrayRunningState(futures));
+        }
+
+        private final class IntArrayRunningState extends PrimitiveArrayRunningState {
+            private int[] values;
+
+            IntArrayRunningState(ImmutableCollection<? extends ListenableFuture<? extends Integer>> futures) {
+                super(futures);
+                this.values = new int[futures.size()];
+            }
+
+            @Override
+            boolean collectValue(int index, Integer returnValue) {
+                int[] localValues = values;
+                if(localValues == null) {
+                    return false;
+                }
+                localValues[index] = returnValue;
+                return true;
+            }
+
+            @Override
+            int[] takeValues() {
+                int[] localValues = values;
+                this.values = null;
+                return localValues;
+            }
+        }
+    }
+
+    static final class LongArrayFuture extends PrimitiveArrayFuture<Long, long[]> {
+        LongArrayFuture(ImmutableCollection<? extends ListenableFuture<? extends Long>> futures) {
+            init(new LongArrayRunningState(futures));
+        }
+
+        private final class LongArrayRunningState extends PrimitiveArrayRunningState {
+            private long[] values;
+
+            LongArrayRunningState(ImmutableCollection<? extends ListenableFuture<? extends Long>> futures) {
+                super(futures);
+                this.values = new long[futures.size()];
+            }
+
+            @Override
+            boolean collectValue(int index, Long returnValue) {
+                long[] localValues = values;
+                if(localValues == null) {
+                    return false;
+                }
+                localValues[index] = returnValue;
+                return true;
+            }
+
+            @Override
+            long[] takeValues() {
+                long[] localValues = values;
+                this.values = null;
+                return localValues;
+            }
+        }
+    }
+
+    static final class DoubleArrayFuture extends PrimitiveArrayFuture<Double, double[]> {
+        DoubleArrayFuture(ImmutableCollection<? extends ListenableFuture<? extends Double>> futures) {
+            init(new DoubleArrayRunningState(futures));
+        }
+
+        private final class DoubleArrayRunningState extends PrimitiveArrayRunningState {
+            private double[] values;
+
+            DoubleArrayRunningState(ImmutableCollection<? extends ListenableFuture<? extends Double>> futures) {
+                super(futures);
+                this.values = new double[futures.size()];
+            }
+
+            @Override
+            boolean collectValue(int index, Double returnValue) {
+                double[] localValues = values;
+                if(localValues == null) {
+                    return false;
+                }
+                localValues[index] = returnValue;
+                return true;
+            }
+
+            @Override
+            double[] takeValues() {
+                double[] localValues = values;
+                this.values = null;
+                return localValues;
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.zz4955.concurrent;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.zz4955.concurrent.Tools.checkNotNull;
+
+/**
+ * 按提交顺序逐个执行任务的Executor，任务都跑在delegate上。
+ * 任务放进一个无锁的多生产者单消费者队列；同一时刻最多只有一个drain任务在delegate上，每次最多连续跑BATCH_SIZE个任务，
+ * 跑满了就把自己重新提交给delegate，让出线程给其他任务。
+ * delegate在提交的线程上直接执行（比如directExecutor）时让不出线程，drain就在当前这一层接着跑，不会递归。
+ */
+final class SequentialExecutor implements Executor {
+
+    private static final Logger log = Logger.getLogger(SequentialExecutor.class.getName());
+
+    private static final int BATCH_SIZE = 64;
+
+    private static final int IDLE = 0;
+    private static final int SCHEDULED = 1;
+
+    private static final VarHandle STATE;
+    private static final VarHandle TAIL;
+    private static final VarHandle NEXT;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            STATE = lookup.findVarHandle(SequentialExecutor.class, "state", int.class);
+            TAIL = lookup.findVarHandle(SequentialExecutor.class, "tail", Node.class);
+            NEXT = lookup.findVarHandle(Node.class, "next", Node.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Executor executor;
+    private final Drain drain = new Drain();
+
+    private volatile int state = IDLE;
+    // 只有drain任务读写head，生产者只动tail
+    private Node head;
+    private volatile Node tail;
+
+    SequentialExecutor(Executor executor) {
+        this.executor = checkNotNull(executor);
+        Node stub = new Node(null);
+        this.head = stub;
+        this.tail = stub;
+    }
+
+    // delegate拒绝时这个任务不会再执行；之前已经排队的任务留在队列里，等下一次提交成功时再跑。
+    @Override
+    public void execute(Runnable task) {
+        checkNotNull(task);
+        Node node = new Node(task);
+        Node prev = (Node) TAIL.getAndSet(this, node);
+        NEXT.setRelease(prev, node);
+        if(!STATE.compareAndSet(this, IDLE, SCHEDULED)) {
+            return ;
+        }
+        try {
+            executor.execute(drain);
+        } catch (RuntimeException | Error e) {
+            // 抢到SCHEDULED又没有提交成功，此时没有drain任务在跑
+            node.task = null;
+            state = IDLE;
+            throw e;
+        }
+    }
+
+    private boolean isEmpty() {
+        return head == tail;
+    }
+
+    private Runnable poll() {
+        while(true) {
+            Node localHead = head;
+            Node next = (Node) NEXT.getAcquire(localHead);
+            if(next == null) {
+                if(localHead == tail) {
+                    return null;
+                }
+                // 生产者已经换了tail但还没挂上next
+                Thread.onSpinWait();
+                continue;
+            }
+            head = next;
+            Runnable task = next.task;
+            next.task = null;
+            if(task != null) {
+                return task;
+            }
+        }
+    }
+
+    private final class Drain implements Runnable {
+
+        @Override
+        public void run() {
+            boolean interruptedDuringTask = false;
+            boolean completedNormally = false;
+            try {
+                interruptedDuringTask = drainQueue();
+                completedNormally = true;
+            } finally {
+                if(interruptedDuringTask) {
+                    Thread.currentThread().interrupt();
+                }
+                if(!completedNormally) {
+                    // 任务抛了Error，放开状态，还有任务的话另起一个drain
+                    state = IDLE;
+                    if(!isEmpty() && STATE.compareAndSet(SequentialExecutor.this, IDLE, SCHEDULED)) {
+                        try {
+                            executor.execute(this);
+                        } catch (RuntimeException | Error e) {
+                            state = IDLE;
+                            log.log(Level.SEVERE, "Exception while rescheduling " + SequentialExecutor.this, e);
+                        }
+                    }
+                }
+            }
+        }
+
+        private boolean drainQueue() {
+            boolean interruptedDuringTask = false;
+            int ran = 0;
+            while(true) {
+                if(ran == BATCH_SIZE) {
+                    ran = 0;
+                    Resubmit resubmit = new Resubmit(Thread.currentThread());
+                    try {
+                        executor.execute(resubmit);
+                    } catch (RejectedExecutionException e) {
+                        // delegate不接受了，就在当前线程上接着跑
+                        continue;
+                    }
+                    resubmit.submitter = null;
+                    if(!resubmit.ranInline) {
+                        return interruptedDuringTask;
+                    }
+                }
+                Runnable task = poll();
+                if(task == null) {
+                    state = IDLE;
+                    // 设成IDLE之后再看一次，避免和刚入队但CAS失败的生产者错过
+                    if(isEmpty() || !STATE.compareAndSet(SequentialExecutor.this, IDLE, SCHEDULED)) {
+                        return interruptedDuringTask;
+                    }
+                    continue;
+                }
+                // 上一个任务留下的中断不传给下一个任务
+                interruptedDuringTask |= Thread.interrupted();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.log(Level.SEVERE, "Exception while executing runnable " + task, e);
+                }
+                ran ++;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "SequentialExecutorDrain{" + SequentialExecutor.this + "}";
+        }
+
+        // 每次重新提交一个，delegate在submitter的execute()里直接执行它时只做标记，由外层的drainQueue接着跑
+        private final class Resubmit implements Runnable {
+            // 只有submitter自己会读到等于自己的值，所以不需要volatile
+            Thread submitter;
+            boolean ranInline;
+
+            Resubmit(Thread submitter) {
+                this.submitter = submitter;
+            }
+
+            @Override
+            public void run() {
+                if(submitter == Thread.currentThread()) {
+                    ranInline = true;
+                    return ;
+                }
+                Drain.this.run();
+            }
+
+            @Override
+            public String toString() {
+                return Drain.this.toString();
+            }
+        }
+    }
+
+    private static final class Node {
+        Runnable task;
+        Node next;
+
+        Node(Runnable task) {
+            this.task = task;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SequentialExecutor@" + System.identityHashCode(this) + "{" + executor + "}";
+    }
+}
@@ -10,23 +10,59 @@ import static com.zz4955.concurrent.Tools.checkNotNull;
 
 final class TimeoutFuture<V> extends AbstractFuture.TrustedFuture<V> {
 
+    // stackless时所有超时共用这一个结果：异常没有栈，消息里也不带delegate的toString
+    private static final SharedFailure STACKLESS_TIMEOUT = new SharedFailure(new StacklessTimeoutException());
+
     static <V> ListenableFuture<V> create(
             ListenableFuture<V> delegate,
             long time,
             TimeUnit unit,
             ScheduledExecutorService scheduledExecutor) {
-        TimeoutFuture<V> result = new TimeoutFuture<>(delegate);
+        return create(delegate, time, unit, scheduledExecutor, STACKLESS_EXCEPTIONS);
+    }
+
+    static <V> ListenableFuture<V> create(
+            ListenableFuture<V> delegate,
+            long time,
+            TimeUnit unit,
+            ScheduledExecutorService scheduledExecutor,
+            boolean stackless) {
+        TimeoutFuture<V> result = new TimeoutFuture<>(delegate, stackless);
         Fire<V> fire = new Fire<>(result);
         result.timer = scheduledExecutor.schedule(fire, time, unit);
         delegate.addListener(fire, directExecutor());
         return result;
     }
 
+    static <V> ListenableFuture<V> create(
+            ListenableFuture<V> delegate,
+            long time,
+            TimeUnit unit,
+            TimerWheel timerWheel) {
+        return create(delegate, time, unit, timerWheel, STACKLESS_EXCEPTIONS);
+    }
+
+    static <V> ListenableFuture<V> create(
+            ListenableFuture<V> delegate,
+            long time,
+            TimeUnit unit,
+            TimerWheel timerWheel,
+            boolean stackless) {
+        TimeoutFuture<V> result = new TimeoutFuture<>(delegate, stackless);
+        Fire<V> fire = new Fire<>(result);
+        result.timeout = timerWheel.newTimeout(fire, time, unit);
+        delegate.addListener(fire, directExecutor());
+        return result;
+    }
+
     private ListenableFuture<V> delegateRef;
     private Future<?> timer;
+    private TimerWheel.Timeout timeout;
+    private final boolean stackless;
 
-    private TimeoutFuture(ListenableFuture<V> delegate) {
+    private TimeoutFuture(ListenableFuture<V> delegate, boolean stackless) {
         this.delegateRef = checkNotNull(delegate);
+        this.stackless = stackless;
     }
 
     private static final class Fire<V> implements Runnable {
@@ -51,7 +87,11 @@ final class TimeoutFuture<V> extends AbstractFuture.TrustedFuture<V> {
                 timeoutFuture.setFuture(delegate);
             } else {
                 try {
-                    timeoutFuture.setException(new TimeoutException("Future timed out: " + delegate));
+                    if(timeoutFuture.stackless) {
+                        timeoutFuture.setSharedFailure(STACKLESS_TIMEOUT);
+                    } else {
+                        timeoutFuture.setException(new TimeoutException("Future timed out: " + delegate));
+                    }
                 } finally {
                     delegate.cancel(true);
                 }
@@ -76,8 +116,26 @@ final class TimeoutFuture<V> extends AbstractFuture.TrustedFuture<V> {
         if(localTimer != null) {
             localTimer.cancel(false);
         }
+        TimerWheel.Timeout localTimeout = timeout;
+        if(localTimeout != null) {
+            localTimeout.cancel();
+        }
 
         delegateRef = null;
         timer = null;
+        timeout = null;
+    }
+
+    private static final class StacklessTimeoutException extends TimeoutException {
+        StacklessTimeoutException() {
+            super("Future timed out.");
+            // 所有超时共用这一个实例，先把cause定下来，不能再被initCause改掉
+            initCause(null);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
     }
 }
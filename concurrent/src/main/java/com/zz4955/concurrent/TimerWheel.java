@@ -0,0 +1,396 @@
+package com.zz4955.concurrent;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.zz4955.concurrent.Tools.checkArgument;
+import static com.zz4955.concurrent.Tools.checkNotNull;
+
+/**
+ * 哈希时间轮：newTimeout和Timeout.cancel都只是一次CAS压栈，由唯一的tick线程在每个tick里把它们放进/移出槽位。
+ * 到期的任务在tick线程上执行，所以应该很短。
+ */
+public final class TimerWheel {
+
+    private static final Logger log = Logger.getLogger(TimerWheel.class.getName());
+
+    private static final VarHandle PENDING;
+    private static final VarHandle CANCELLED;
+    private static final VarHandle TIMEOUT_STATE;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            PENDING = lookup.findVarHandle(TimerWheel.class, "pending", Timeout.class);
+            CANCELLED = lookup.findVarHandle(TimerWheel.class, "cancelled", Timeout.class);
+            TIMEOUT_STATE = lookup.findVarHandle(Timeout.class, "state", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final int WORKER_INIT = 0;
+    private static final int WORKER_STARTED = 1;
+    private static final int WORKER_SHUTDOWN = 2;
+
+    private final long tickNanos;
+    private final Timeout[] heads;
+    private final Timeout[] tails;
+    private final int mask;
+    private final long startTime;
+    private final Thread workerThread;
+    private final AtomicInteger workerState = new AtomicInteger(WORKER_INIT);
+    // WORKER_STARTED先于workerThread.start()发布，shutdown()要等线程真的启动了才能join
+    private final CountDownLatch workerStarted = new CountDownLatch(1);
+
+    private volatile Timeout pending;
+    private volatile Timeout cancelled;
+
+    // 只在tick线程上读写
+    private long tick;
+    // tick线程退出前写，shutdown()在join之后读
+    private Set<Timeout> unprocessedTimeouts = Collections.emptySet();
+
+    public static TimerWheel create() {
+        return create(1, TimeUnit.MILLISECONDS, 512);
+    }
+
+    public static TimerWheel create(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        return create(tickDuration, unit, ticksPerWheel, Executors.defaultThreadFactory());
+    }
+
+    public static TimerWheel create(long tickDuration, TimeUnit unit, int ticksPerWheel, ThreadFactory threadFactory) {
+        return new TimerWheel(tickDuration, unit, ticksPerWheel, threadFactory);
+    }
+
+    private TimerWheel(long tickDuration, TimeUnit unit, int ticksPerWheel, ThreadFactory threadFactory) {
+        checkArgument(tickDuration > 0, "tickDuration must be positive: %s", tickDuration);
+        checkArgument(ticksPerWheel > 0 && ticksPerWheel <= 1 << 30,
+                "ticksPerWheel must be in (0, 2^30]: %s", ticksPerWheel);
+        int wheelSize = Integer.highestOneBit(ticksPerWheel - 1) << 1;
+        if(wheelSize == 0) {
+            wheelSize = 1;
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.heads = new Timeout[wheelSize];
+        this.tails = new Timeout[wheelSize];
+        this.mask = wheelSize - 1;
+        this.startTime = System.nanoTime();
+        this.workerThread = checkNotNull(threadFactory).newThread(new Worker());
+        checkNotNull(workerThread, "ThreadFactory returned null.");
+    }
+
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        checkNotNull(task);
+        checkNotNull(unit);
+        start();
+        long delayNanos = Math.max(unit.toNanos(delay), 0L);
+        long deadline = System.nanoTime() + delayNanos - startTime;
+        if(delayNanos > 0 && deadline < 0) {
+            deadline = Long.MAX_VALUE;
+        }
+        Timeout timeout = new Timeout(this, task, deadline);
+        Timeout oldHead;
+        do {
+            oldHead = pending;
+            timeout.nextPending = oldHead;
+        } while (!PENDING.compareAndSet(this, oldHead, timeout));
+        // 和shutdown()赛跑时，tick线程可能已经收尾，这个timeout再也不会被处理；被收尾认领过的已经不是ST_INIT，留给shutdown()返回
+        if(workerState.get() == WORKER_SHUTDOWN && TIMEOUT_STATE.compareAndSet(timeout, Timeout.ST_INIT, Timeout.ST_CANCELLED)) {
+            timeout.task = null;
+            throw new RejectedExecutionException("TimerWheel was shut down.");
+        }
+        return timeout;
+    }
+
+    /**
+     * 停止tick线程并等它退出，返回还没到期也没取消的timeout，它们的任务不会再执行。
+     * 需要的话由调用者自己处理，比如执行Timeout.task()，否则等着它们的withTimeout永远不会超时。
+     * 返回的timeout的task()一定不是null，它们也不能再cancel()。
+     * 不能在到期任务里调用。
+     */
+    public Set<Timeout> shutdown() {
+        if(Thread.currentThread() == workerThread) {
+            throw new IllegalStateException("TimerWheel.shutdown() cannot be called from a timeout task.");
+        }
+        if(workerState.getAndSet(WORKER_SHUTDOWN) != WORKER_STARTED) {
+            return Collections.emptySet();
+        }
+        boolean interrupted = false;
+        try {
+            while(true) {
+                try {
+                    workerStarted.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            LockSupport.unpark(workerThread);
+            while(true) {
+                try {
+                    workerThread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if(interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return unprocessedTimeouts;
+    }
+
+    private void start() {
+        int state = workerState.get();
+        if(state == WORKER_INIT) {
+            if(workerState.compareAndSet(WORKER_INIT, WORKER_STARTED)) {
+                try {
+                    workerThread.setDaemon(true);
+                    workerThread.start();
+                } finally {
+                    workerStarted.countDown();
+                }
+            }
+        } else if(state == WORKER_SHUTDOWN) {
+            throw new RejectedExecutionException("TimerWheel was shut down.");
+        }
+    }
+
+    private void addCancelled(Timeout timeout) {
+        if(workerState.get() == WORKER_SHUTDOWN) {
+            return ;
+        }
+        Timeout oldHead;
+        do {
+            oldHead = cancelled;
+            timeout.nextCancelled = oldHead;
+        } while (!CANCELLED.compareAndSet(this, oldHead, timeout));
+    }
+
+    private final class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            while(workerState.get() == WORKER_STARTED) {
+                long now = waitForNextTick();
+                if(now < 0) {
+                    break;
+                }
+                int index = (int) (tick & mask);
+                removeCancelled();
+                transferPending();
+                expire(index);
+                tick ++;
+            }
+            // 停止后不再执行任何任务，还在等的交给shutdown()返回
+            Set<Timeout> unprocessed = new HashSet<>();
+            Timeout timeout = (Timeout) PENDING.getAndSet(TimerWheel.this, null);
+            while(timeout != null) {
+                Timeout next = timeout.nextPending;
+                timeout.nextPending = null;
+                if(timeout.claimUnprocessed()) {
+                    unprocessed.add(timeout);
+                }
+                timeout = next;
+            }
+            for(int i = 0; i < heads.length; i ++) {
+                timeout = heads[i];
+                while(timeout != null) {
+                    Timeout next = timeout.next;
+                    unlink(timeout);
+                    if(timeout.claimUnprocessed()) {
+                        unprocessed.add(timeout);
+                    }
+                    timeout = next;
+                }
+            }
+            CANCELLED.getAndSet(TimerWheel.this, null);
+            unprocessedTimeouts = Collections.unmodifiableSet(unprocessed);
+        }
+
+        private long waitForNextTick() {
+            long deadline = tickNanos * (tick + 1);
+            while(true) {
+                long now = System.nanoTime() - startTime;
+                long sleepNanos = deadline - now;
+                if(sleepNanos <= 0) {
+                    return now;
+                }
+                LockSupport.parkNanos(TimerWheel.this, sleepNanos);
+                if(workerState.get() != WORKER_STARTED) {
+                    return -1;
+                }
+            }
+        }
+
+        private void removeCancelled() {
+            Timeout timeout = (Timeout) CANCELLED.getAndSet(TimerWheel.this, null);
+            while(timeout != null) {
+                Timeout next = timeout.nextCancelled;
+                timeout.nextCancelled = null;
+                unlink(timeout);
+                timeout = next;
+            }
+        }
+
+        private void transferPending() {
+            Timeout timeout = (Timeout) PENDING.getAndSet(TimerWheel.this, null);
+            while(timeout != null) {
+                Timeout next = timeout.nextPending;
+                timeout.nextPending = null;
+                if(timeout.state == Timeout.ST_INIT) {
+                    long calculated = timeout.deadline / tickNanos;
+                    timeout.remainingRounds = (calculated - tick) / heads.length;
+                    long ticks = Math.max(calculated, tick);
+                    link((int) (ticks & mask), timeout);
+                }
+                timeout = next;
+            }
+        }
+
+        private void expire(int index) {
+            Timeout timeout = heads[index];
+            while(timeout != null) {
+                Timeout next = timeout.next;
+                if(timeout.state != Timeout.ST_INIT) {
+                    unlink(timeout);
+                } else if(timeout.remainingRounds <= 0) {
+                    // 槽位和轮数都是按deadline算的，轮到这里时deadline一定已经过了
+                    unlink(timeout);
+                    timeout.expire();
+                } else {
+                    timeout.remainingRounds --;
+                }
+                timeout = next;
+            }
+        }
+
+        private void link(int index, Timeout timeout) {
+            timeout.bucket = index;
+            Timeout tail = tails[index];
+            if(tail == null) {
+                heads[index] = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+            }
+            tails[index] = timeout;
+        }
+
+        private void unlink(Timeout timeout) {
+            int index = timeout.bucket;
+            if(index < 0) {
+                return ;
+            }
+            Timeout prev = timeout.prev;
+            Timeout next = timeout.next;
+            if(prev == null) {
+                heads[index] = next;
+            } else {
+                prev.next = next;
+            }
+            if(next == null) {
+                tails[index] = prev;
+            } else {
+                next.prev = prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = -1;
+        }
+    }
+
+    public static final class Timeout {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+        // shutdown时还在等，由shutdown()返回
+        private static final int ST_UNPROCESSED = 3;
+
+        private final TimerWheel wheel;
+        private Runnable task;
+        private final long deadline;
+        private volatile int state = ST_INIT;
+
+        // 下面的字段只在tick线程上使用
+        private long remainingRounds;
+        private int bucket = -1;
+        private Timeout next;
+        private Timeout prev;
+
+        // 压栈用，push之前写，getAndSet之后读
+        private Timeout nextPending;
+        private Timeout nextCancelled;
+
+        private Timeout(TimerWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public boolean cancel() {
+            if(!TIMEOUT_STATE.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            task = null;
+            wheel.addCancelled(this);
+            return true;
+        }
+
+        // 已经取消或到期时返回null
+        public Runnable task() {
+            return task;
+        }
+
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+
+        // 和newTimeout里的拒绝、cancel()抢同一个CAS，抢到的才放进shutdown()的返回值，task一定还在
+        private boolean claimUnprocessed() {
+            return TIMEOUT_STATE.compareAndSet(this, ST_INIT, ST_UNPROCESSED);
+        }
+
+        private void expire() {
+            if(!TIMEOUT_STATE.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+                return ;
+            }
+            Runnable localTask = task;
+            task = null;
+            try {
+                localTask.run();
+            } catch (Throwable t) {
+                log.log(Level.WARNING, "An exception was thrown by " + localTask, t);
+            }
+        }
+
+        @Override
+        public String toString() {
+            int localState = state;
+            String status = localState == ST_CANCELLED ? "CANCELLED"
+                    : localState == ST_EXPIRED ? "EXPIRED"
+                    : localState == ST_UNPROCESSED ? "UNPROCESSED"
+                    : "PENDING";
+            return super.toString() + "[status=" + status + ", task=[" + task + "]]";
+        }
+    }
+}
@@ -37,18 +37,93 @@ public class Tools {
         }
     }
 
+    // 下面这些定长、基本类型的重载只在检查失败时才装箱、分配数组和格式化
     public static void checkState(boolean b, String errorMessageTemplate, Object p1) {
         if(!b) {
             throw new IllegalStateException(lenientFormat(errorMessageTemplate, p1));
         }
     }
 
+    public static void checkState(boolean b, String errorMessageTemplate, char p1) {
+        if(!b) {
+            throw new IllegalStateException(lenientFormat(errorMessageTemplate, p1));
+        }
+    }
+
+    public static void checkState(boolean b, String errorMessageTemplate, int p1) {
+        if(!b) {
+            throw new IllegalStateException(lenientFormat(errorMessageTemplate, p1));
+        }
+    }
+
+    public static void checkState(boolean b, String errorMessageTemplate, long p1) {
+        if(!b) {
+            throw new IllegalStateException(lenientFormat(errorMessageTemplate, p1));
+        }
+    }
+
+    public static void checkState(boolean b, String errorMessageTemplate, Object p1, Object p2) {
+        if(!b) {
+            throw new IllegalStateException(lenientFormat(errorMessageTemplate, p1, p2));
+        }
+    }
+
+    public static void checkState(boolean b, String errorMessageTemplate, Object p1, Object p2, Object p3) {
+        if(!b) {
+            throw new IllegalStateException(lenientFormat(errorMessageTemplate, p1, p2, p3));
+        }
+    }
+
+    public static void checkState(
+            boolean b, String errorMessageTemplate, Object p1, Object p2, Object p3, Object p4) {
+        if(!b) {
+            throw new IllegalStateException(lenientFormat(errorMessageTemplate, p1, p2, p3, p4));
+        }
+    }
+
     public static void checkArgument(boolean b, String errorMessageTemplate, Object p1) {
         if(!b) {
             throw new IllegalArgumentException(lenientFormat(errorMessageTemplate, p1));
         }
     }
 
+    public static void checkArgument(boolean b, String errorMessageTemplate, char p1) {
+        if(!b) {
+            throw new IllegalArgumentException(lenientFormat(errorMessageTemplate, p1));
+        }
+    }
+
+    public static void checkArgument(boolean b, String errorMessageTemplate, int p1) {
+        if(!b) {
+            throw new IllegalArgumentException(lenientFormat(errorMessageTemplate, p1));
+        }
+    }
+
+    public static void checkArgument(boolean b, String errorMessageTemplate, long p1) {
+        if(!b) {
+            throw new IllegalArgumentException(lenientFormat(errorMessageTemplate, p1));
+        }
+    }
+
+    public static void checkArgument(boolean b, String errorMessageTemplate, Object p1, Object p2) {
+        if(!b) {
+            throw new IllegalArgumentException(lenientFormat(errorMessageTemplate, p1, p2));
+        }
+    }
+
+    public static void checkArgument(boolean b, String errorMessageTemplate, Object p1, Object p2, Object p3) {
+        if(!b) {
+            throw new IllegalArgumentException(lenientFormat(errorMessageTemplate, p1, p2, p3));
+        }
+    }
+
+    public static void checkArgument(
+            boolean b, String errorMessageTemplate, Object p1, Object p2, Object p3, Object p4) {
+        if(!b) {
+            throw new IllegalArgumentException(lenientFormat(errorMessageTemplate, p1, p2, p3, p4));
+        }
+    }
+
     public static boolean isInstanceOfThrowableClass(Throwable t, Class<? extends Throwable> expectedClass) {
         return expectedClass.isInstance(t);
     }
@@ -82,39 +157,58 @@ public class Tools {
         };
     }
 
+    // 先把参数转成字符串、找出要替换的占位符，算出结果的准确长度，再一次拼出来；不改动传进来的args
     public static String lenientFormat(String template, Object... args) {
         template = String.valueOf(template); // null -> "null"
 
+        String[] strings;
         if (args == null) {
-            args = new Object[] {"(Object[])null"};
+            strings = new String[] {"(Object[])null"};
         } else {
+            strings = new String[args.length];
             for (int i = 0; i < args.length; i++) {
-                args[i] = lenientToString(args[i]);
+                strings[i] = lenientToString(args[i]);
             }
         }
 
-        // start substituting the arguments into the '%s' placeholders
-        StringBuilder builder = new StringBuilder(template.length() + 16 * args.length);
-        int templateStart = 0;
-        int i = 0;
-        while (i < args.length) {
-            int placeholderStart = template.indexOf("%s", templateStart);
+        int[] placeholders = new int[strings.length];
+        int found = 0;
+        int searchFrom = 0;
+        while (found < strings.length) {
+            int placeholderStart = template.indexOf("%s", searchFrom);
             if (placeholderStart == -1) {
                 break;
             }
-            builder.append(template, templateStart, placeholderStart);
-            builder.append(args[i++]);
-            templateStart = placeholderStart + 2;
+            placeholders[found++] = placeholderStart;
+            searchFrom = placeholderStart + 2;
+        }
+
+        int length = template.length() - 2 * found;
+        for (String string : strings) {
+            length += string.length();
+        }
+        int extra = strings.length - found;
+        if (extra > 0) {
+            // " [" + "]"，以及多出来的参数之间的", "
+            length += 3 + 2 * (extra - 1);
+        }
+
+        StringBuilder builder = new StringBuilder(length);
+        int templateStart = 0;
+        for (int i = 0; i < found; i++) {
+            builder.append(template, templateStart, placeholders[i]);
+            builder.append(strings[i]);
+            templateStart = placeholders[i] + 2;
         }
         builder.append(template, templateStart, template.length());
 
         // if we run out of placeholders, append the extra args in square braces
-        if (i < args.length) {
+        if (extra > 0) {
             builder.append(" [");
-            builder.append(args[i++]);
-            while (i < args.length) {
+            builder.append(strings[found]);
+            for (int i = found + 1; i < strings.length; i++) {
                 builder.append(", ");
-                builder.append(args[i++]);
+                builder.append(strings[i]);
             }
             builder.append(']');
         }
@@ -0,0 +1,145 @@
+package com.zz4955.concurrent;
+
+import java.util.concurrent.Future;
+
+/**
+ * AbstractFuture.get()在把当前线程挂起之前怎么等。
+ * 全局默认值由系统属性concurrent.wait_strategy决定（park、adaptive、busy_spin，默认park），单个future可以覆盖AbstractFuture.waitStrategy()。
+ */
+public abstract class WaitStrategy {
+
+    private static final WaitStrategy PARK = new Park();
+    private static final WaitStrategy BUSY_SPIN = new BusySpin();
+
+    static final WaitStrategy DEFAULT = fromName(System.getProperty("concurrent.wait_strategy", "park"));
+
+    protected WaitStrategy() {}
+
+    /**
+     * 在挂起之前等future完成，最多等remainingNanos（不限时的get传Long.MAX_VALUE）。
+     * 返回true表示future已经完成，get()会再检查一次结果，还没完成就当作返回false；返回false之后get()会照常入队挂起。线程被中断时应该尽快返回false。
+     */
+    public abstract boolean await(Future<?> future, long remainingNanos);
+
+    // 直接挂起，不自旋
+    public static WaitStrategy park() {
+        return PARK;
+    }
+
+    // 一直自旋到完成、超时或被中断，会占满一个核
+    public static WaitStrategy busySpin() {
+        return BUSY_SPIN;
+    }
+
+    // 先自旋一段时间，再yield几次，最后挂起；自旋时长根据最近几次自旋等到的完成耗时调整，每个实例各自学习
+    public static WaitStrategy adaptive() {
+        return new Adaptive();
+    }
+
+    private static WaitStrategy fromName(String name) {
+        switch (name) {
+            case "adaptive":
+                return adaptive();
+            case "busy_spin":
+                return busySpin();
+            default:
+                return park();
+        }
+    }
+
+    private static final class Park extends WaitStrategy {
+        @Override
+        public boolean await(Future<?> future, long remainingNanos) {
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "WaitStrategy.park()";
+        }
+    }
+
+    private static final class BusySpin extends WaitStrategy {
+        @Override
+        public boolean await(Future<?> future, long remainingNanos) {
+            long start = System.nanoTime();
+            while(!future.isDone()) {
+                if(Thread.currentThread().isInterrupted() || System.nanoTime() - start >= remainingNanos) {
+                    return false;
+                }
+                Thread.onSpinWait();
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "WaitStrategy.busySpin()";
+        }
+    }
+
+    private static final class Adaptive extends WaitStrategy {
+        private static final long MIN_SPIN_NANOS = 100L;
+        private static final long MAX_SPIN_NANOS = 50_000L;
+        private static final int YIELDS = 2;
+
+        // 多个线程同时更新时丢掉几次也没关系
+        private volatile long spinNanos = 1000L;
+
+        @Override
+        public boolean await(Future<?> future, long remainingNanos) {
+            long limit = Math.min(spinNanos, remainingNanos);
+            long start = System.nanoTime();
+            long elapsed = 0;
+            while(elapsed < limit) {
+                if(future.isDone()) {
+                    hit(elapsed);
+                    return true;
+                }
+                if(Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                Thread.onSpinWait();
+                elapsed = System.nanoTime() - start;
+            }
+            for(int i = 0; i < YIELDS && elapsed < remainingNanos; i ++) {
+                Thread.yield();
+                if(future.isDone()) {
+                    hit(System.nanoTime() - start);
+                    return true;
+                }
+                elapsed = System.nanoTime() - start;
+            }
+            miss();
+            return false;
+        }
+
+        // 自旋等到了：往完成耗时的两倍靠
+        private void hit(long elapsedNanos) {
+            long current = spinNanos;
+            update(current, clamp(current - (current >> 3) + (elapsedNanos >> 2)));
+        }
+
+        // 自旋白费了：缩短
+        private void miss() {
+            long current = spinNanos;
+            update(current, clamp(current - (current >> 3)));
+        }
+
+        // DEFAULT可能被所有线程共用，变化不到1/16就不写，稳定之后get()只读这个字段，不会争抢缓存行
+        private void update(long current, long next) {
+            if(Math.abs(next - current) > (current >> 4)) {
+                spinNanos = next;
+            }
+        }
+
+        private static long clamp(long nanos) {
+            return Math.max(MIN_SPIN_NANOS, Math.min(MAX_SPIN_NANOS, nanos));
+        }
+
+        @Override
+        public String toString() {
+            return "WaitStrategy.adaptive()[spinNanos=" + spinNanos + "]";
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.zz4955.example;
+
+import com.zz4955.concurrent.Futures;
+import com.zz4955.concurrent.ListenableFuture;
+import com.zz4955.concurrent.ListeningExecutorService;
+import com.zz4955.concurrent.MoreExecutors;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+
+public class FuturesSuccessfulAsListEx {
+
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        ListeningExecutorService executorService = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(3));
+        ListenableFuture<Integer> listenableFuture1 = executorService.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return 1;
+            }
+        });
+        ListenableFuture<Integer> listenableFuture2 = executorService.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                throw new MyExceptionForEx("test");
+            }
+        });
+
+        // 失败的输入在结果里是null，整体不会失败。
+        ListenableFuture<List<Integer>> listListenableFuture = Futures.successfulAsList(listenableFuture1, listenableFuture2);
+        System.out.println(listListenableFuture.get());
+
+        // 所有输入都完成（不管成功失败）之后再在executorService上执行call。
+        ListenableFuture<String> combined = Futures.whenAllComplete(listenableFuture1, listenableFuture2)
+                .call(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return "1 done: " + listenableFuture1.isDone() + ", 2 done: " + listenableFuture2.isDone();
+                    }
+                }, executorService);
+        System.out.println(combined.get());
+
+        executorService.shutdownNow();
+        System.out.println("main is done.");
+    }
+}